@@ -1,8 +1,6 @@
 package com.bencvt.minecraft.buildregion;
 
 import java.lang.reflect.Field;
-import java.util.Arrays;
-import java.util.HashSet;
 
 import net.minecraft.client.Minecraft;
 import net.minecraft.src.Block;
@@ -24,13 +22,25 @@ import com.bencvt.minecraft.buildregion.region.Direction3D;
 public class BlockClickHandler implements PlayerControllerEventListener {
     private final Minecraft minecraft;
     private final Controller controller;
+    private final BlockFlags blockFlags;
+    /**
+     * The single slab block id for each ItemSlab, indexed by item id. Zero
+     * if not resolved yet.
+     */
+    private final int[] slabBlockIds;
 
     public BlockClickHandler(Controller controller) {
         minecraft = Minecraft.getMinecraft();
         this.controller = controller;
+        blockFlags = new BlockFlags(controller.getModDirectory());
+        slabBlockIds = new int[Block.blocksList.length];
         PlayerControllerHooks.register(this);
     }
 
+    public BlockFlags getBlockFlags() {
+        return blockFlags;
+    }
+
     @Override
     public boolean onBlockClick(boolean isLeftClick, int blockX, int blockY, int blockZ, int direction, boolean cancelled) {
         return cancelled || handleBlockClick(isLeftClick, blockX, blockY, blockZ, direction);
@@ -90,7 +100,7 @@ public class BlockClickHandler implements PlayerControllerEventListener {
             // Else this is a normal block being placed.
         }
 
-        boolean insideRegion = controller.getCurRegion().isInsideRegion(blockX, blockY, blockZ);
+        boolean insideRegion = controller.isInsideCurRegion(blockX, blockY, blockZ);
         if ((buildMode == BuildMode.INSIDE && !insideRegion) ||
                 (buildMode == BuildMode.OUTSIDE && insideRegion)) {
             controller.notifyDenyClick();
@@ -101,12 +111,10 @@ public class BlockClickHandler implements PlayerControllerEventListener {
 
     /**
      * @return true if the specified block id is always allowed to be
-     *         placed/destroyed. Being able to light your work area with
-     *         minimal fuss is an important quality-of-life issue in survival
-     *         mode!
+     *         placed/destroyed, e.g. torches.
      */
-    private static boolean isExcludedBlock(int blockId) {
-        return blockId == Block.torchWood.blockID;
+    private boolean isExcludedBlock(int blockId) {
+        return blockFlags.has(blockId, BlockFlags.EXCLUDED);
     }
 
     private boolean isPlayerHoldingExcludedBlock() {
@@ -123,15 +131,12 @@ public class BlockClickHandler implements PlayerControllerEventListener {
         // Certain blocks that you can walk through are always treated as air
         // by Minecraft when placing another block on top of it.
         int blockId = minecraft.theWorld.getBlockId(blockX, blockY, blockZ);
-        if (blockId == Block.snow.blockID ||
-                blockId == Block.vine.blockID ||
-                blockId == Block.tallGrass.blockID ||
-                blockId == Block.deadBush.blockID) {
+        if (blockFlags.has(blockId, BlockFlags.BUILD_REPLACE)) {
             return true;
         }
 
         // Is the player is attempting to place a slab adjacent to another slab?
-        if (!(Block.blocksList[blockId] instanceof BlockHalfSlab)) {
+        if (!blockFlags.has(blockId, BlockFlags.SLAB)) {
             return false;
         }
         ItemStack heldItemStack = minecraft.thePlayer.getCurrentEquippedItem();
@@ -141,7 +146,7 @@ public class BlockClickHandler implements PlayerControllerEventListener {
         ItemSlab heldSlab = (ItemSlab) heldItemStack.getItem();
 
         // Do the slab types match?
-        if (!slabBlockIdMatches(heldSlab, blockId)) {
+        if (getSlabBlockId(heldSlab, heldItemStack.itemID) != blockId) {
             return false;
         }
         int blockMetadata = minecraft.theWorld.getBlockMetadata(blockX, blockY, blockZ);
@@ -161,15 +166,30 @@ public class BlockClickHandler implements PlayerControllerEventListener {
         return true;
     }
 
-    private static boolean slabBlockIdMatches(ItemSlab slab, int blockId) {
+    /**
+     * @return the block id of the single slab placed by the item, or -1.
+     *         Resolved by reflection the first time each item is seen, as
+     *         this is on the right-click path.
+     */
+    private int getSlabBlockId(ItemSlab slab, int itemId) {
+        if (itemId < 0 || itemId >= slabBlockIds.length) {
+            return resolveSlabBlockId(slab);
+        }
+        if (slabBlockIds[itemId] == 0) {
+            slabBlockIds[itemId] = resolveSlabBlockId(slab);
+        }
+        return slabBlockIds[itemId];
+    }
+
+    private static int resolveSlabBlockId(ItemSlab slab) {
         try {
             for (Field field : ItemSlab.class.getDeclaredFields()) {
                 if (field.getType() == BlockHalfSlab.class) {
                     field.setAccessible(true);
                     BlockHalfSlab block = (BlockHalfSlab) field.get(slab);
                     // isOpaqueCube returns true if the block is a double slab.
-                    if (!block.isOpaqueCube() && blockId == block.blockID) {
-                        return true;
+                    if (!block.isOpaqueCube()) {
+                        return block.blockID;
                     }
                     // Else keep looking; there should be two BlockHalfSlab
                     // fields which are listed by getDeclaredFields in
@@ -179,7 +199,7 @@ public class BlockClickHandler implements PlayerControllerEventListener {
         } catch (Exception e) {
             throw new RuntimeException("internal reflection error", e);
         }
-        return false;
+        return -1;
     }
 
     /**
@@ -188,7 +208,7 @@ public class BlockClickHandler implements PlayerControllerEventListener {
      * adjacent to it.
      * <p>
      * Unfortunately there's no clean method or API for this, so we rely on a
-     * list of known block IDs and a few special cases.
+     * list of known block IDs (see BlockFlags) and a few special cases.
      * 
      * @return true if the block will definitely consume the right-click,
      *         false if it will probably not.
@@ -198,7 +218,7 @@ public class BlockClickHandler implements PlayerControllerEventListener {
 
         // Check the list of IDs for blocks that override onBlockActivated() to
         // always return true when the player is holding an ItemBlock.
-        if (blockIdsConsumingRightClick.contains(blockId)) {
+        if (blockFlags.has(blockId, BlockFlags.CONSUMES_RIGHT_CLICK)) {
             return true;
         }
 
@@ -231,33 +251,4 @@ public class BlockClickHandler implements PlayerControllerEventListener {
         // blocks, so they are also not considered by this method.
         return false;
     }
-
-    private static final HashSet<Integer> blockIdsConsumingRightClick =
-            new HashSet<Integer>(Arrays.asList(new Integer[] {
-                    Block.anvil.blockID,
-                    Block.beacon.blockID,
-                    Block.bed.blockID,
-                    Block.brewingStand.blockID,
-                    Block.cake.blockID,
-                    Block.cauldron.blockID,
-                    Block.chest.blockID,
-                    Block.commandBlock.blockID,
-                    Block.dispenser.blockID,
-                    Block.doorSteel.blockID,
-                    Block.doorWood.blockID,
-                    Block.dragonEgg.blockID,
-                    Block.enchantmentTable.blockID,
-                    Block.enderChest.blockID,
-                    Block.fenceGate.blockID,
-                    Block.lever.blockID,
-                    Block.music.blockID, // a.k.a. note block
-                    Block.redstoneRepeaterActive.blockID,
-                    Block.redstoneRepeaterIdle.blockID,
-                    Block.stoneButton.blockID,
-                    Block.stoneOvenActive.blockID,
-                    Block.stoneOvenIdle.blockID,
-                    Block.trapdoor.blockID,
-                    Block.woodenButton.blockID,
-                    Block.workbench.blockID // a.k.a. crafting table
-            }));
 }
@@ -0,0 +1,194 @@
+package com.bencvt.minecraft.buildregion;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+
+import net.minecraft.src.Block;
+import net.minecraft.src.BlockHalfSlab;
+
+/**
+ * Classify block ids for BlockClickHandler: one byte of flags per id, built
+ * once at startup so each click is a single array lookup.
+ * <p>
+ * The defaults cover vanilla blocks. Modded blocks can be classified in
+ * blockflags.properties in the mod directory, one entry per block id:
+ * <pre>
+ * # block id = comma-separated flags; prefix a flag with - to clear it
+ * 3000=rightclick
+ * 50=-excluded
+ * </pre>
+ * Flag names: excluded, rightclick, replace, slab.
+ * <p>
+ * Problems with the file are collected, to be shown in chat once the player
+ * is in game.
+ *
+ * @author bencvt
+ */
+public class BlockFlags {
+    public static final String CONFIG_FILE_NAME = "blockflags.properties";
+
+    /** Always allowed to be placed/destroyed. */
+    public static final int EXCLUDED = 1 << 0;
+    /** Consumes right-clicks rather than letting a block be placed. */
+    public static final int CONSUMES_RIGHT_CLICK = 1 << 1;
+    /** Replaced when placing a block against it. */
+    public static final int BUILD_REPLACE = 1 << 2;
+    /** A single slab, which may become a double slab. */
+    public static final int SLAB = 1 << 3;
+
+    private static final String[] FLAG_NAMES = {"excluded", "rightclick", "replace", "slab"};
+
+    private final byte[] flags;
+    private String loadErrors;
+
+    public BlockFlags(File modDirectory) {
+        flags = new byte[Block.blocksList.length];
+        for (Block block : Block.blocksList) {
+            if (block instanceof BlockHalfSlab) {
+                add(block, SLAB);
+            }
+        }
+
+        // Being able to light your work area with minimal fuss is an
+        // important quality-of-life issue in survival mode!
+        add(Block.torchWood, EXCLUDED);
+
+        // Blocks that you can walk through are always treated as air by
+        // Minecraft when placing another block on top of it.
+        add(Block.snow, BUILD_REPLACE);
+        add(Block.vine, BUILD_REPLACE);
+        add(Block.tallGrass, BUILD_REPLACE);
+        add(Block.deadBush, BUILD_REPLACE);
+
+        // Blocks that override onBlockActivated() to always return true when
+        // the player is holding an ItemBlock.
+        add(Block.anvil, CONSUMES_RIGHT_CLICK);
+        add(Block.beacon, CONSUMES_RIGHT_CLICK);
+        add(Block.bed, CONSUMES_RIGHT_CLICK);
+        add(Block.brewingStand, CONSUMES_RIGHT_CLICK);
+        add(Block.cake, CONSUMES_RIGHT_CLICK);
+        add(Block.cauldron, CONSUMES_RIGHT_CLICK);
+        add(Block.chest, CONSUMES_RIGHT_CLICK);
+        add(Block.commandBlock, CONSUMES_RIGHT_CLICK);
+        add(Block.dispenser, CONSUMES_RIGHT_CLICK);
+        add(Block.doorSteel, CONSUMES_RIGHT_CLICK);
+        add(Block.doorWood, CONSUMES_RIGHT_CLICK);
+        add(Block.dragonEgg, CONSUMES_RIGHT_CLICK);
+        add(Block.enchantmentTable, CONSUMES_RIGHT_CLICK);
+        add(Block.enderChest, CONSUMES_RIGHT_CLICK);
+        add(Block.fenceGate, CONSUMES_RIGHT_CLICK);
+        add(Block.lever, CONSUMES_RIGHT_CLICK);
+        add(Block.music, CONSUMES_RIGHT_CLICK); // a.k.a. note block
+        add(Block.redstoneRepeaterActive, CONSUMES_RIGHT_CLICK);
+        add(Block.redstoneRepeaterIdle, CONSUMES_RIGHT_CLICK);
+        add(Block.stoneButton, CONSUMES_RIGHT_CLICK);
+        add(Block.stoneOvenActive, CONSUMES_RIGHT_CLICK);
+        add(Block.stoneOvenIdle, CONSUMES_RIGHT_CLICK);
+        add(Block.trapdoor, CONSUMES_RIGHT_CLICK);
+        add(Block.woodenButton, CONSUMES_RIGHT_CLICK);
+        add(Block.workbench, CONSUMES_RIGHT_CLICK); // a.k.a. crafting table
+
+        load(new File(modDirectory, CONFIG_FILE_NAME));
+    }
+
+    private void add(Block block, int flag) {
+        if (block != null) {
+            flags[block.blockID] |= flag;
+        }
+    }
+
+    /**
+     * Apply the user's entries, if the file exists. Invalid entries are
+     * skipped.
+     */
+    private void load(File file) {
+        if (!file.exists()) {
+            return;
+        }
+        Properties config = new Properties();
+        try {
+            InputStream in = new FileInputStream(file);
+            try {
+                config.load(in);
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            addLoadError(Controller.i18n("chat.blockflags.unreadable", file, e.getMessage()));
+            return;
+        }
+        for (Map.Entry<Object, Object> entry : config.entrySet()) {
+            if (!parseEntry(((String) entry.getKey()).trim(), (String) entry.getValue())) {
+                addLoadError(Controller.i18n("chat.blockflags.invalid", file,
+                        entry.getKey() + "=" + entry.getValue()));
+            }
+        }
+    }
+
+    private void addLoadError(String message) {
+        loadErrors = loadErrors == null ? message : loadErrors + "\n" + message;
+    }
+
+    private boolean parseEntry(String key, String value) {
+        final int blockId;
+        try {
+            blockId = Integer.parseInt(key);
+        } catch (NumberFormatException e) {
+            return false;
+        }
+        if (blockId < 0 || blockId >= flags.length) {
+            return false;
+        }
+        int set = 0;
+        int clear = 0;
+        for (String name : value.split(",")) {
+            name = name.trim().toLowerCase(Locale.ENGLISH);
+            final boolean negate = name.startsWith("-");
+            final int flag = getFlag(negate ? name.substring(1) : name);
+            if (flag == 0) {
+                return false;
+            }
+            if (negate) {
+                clear |= flag;
+            } else {
+                set |= flag;
+            }
+        }
+        flags[blockId] = (byte) ((flags[blockId] & ~clear) | set);
+        return true;
+    }
+
+    private static int getFlag(String name) {
+        for (int i = 0; i < FLAG_NAMES.length; i++) {
+            if (FLAG_NAMES[i].equals(name)) {
+                return 1 << i;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @return newline-separated messages about problems loading the file,
+     *         or null if none
+     */
+    public String getLoadErrors() {
+        return loadErrors;
+    }
+
+    public void setLoadErrors(String loadErrors) {
+        this.loadErrors = loadErrors;
+    }
+
+    /**
+     * @param id a block id, or an item id (never set, as items aren't blocks)
+     * @return true if the id has the flag
+     */
+    public boolean has(int id, int flag) {
+        return id >= 0 && id < flags.length && (flags[id] & flag) != 0;
+    }
+}
@@ -11,10 +11,12 @@ import libshapedraw.primitive.ReadonlyVector3;
 import libshapedraw.primitive.Vector3;
 import net.minecraft.client.Minecraft;
 import net.minecraft.src.PlayerControllerHooks;
+import net.minecraft.src.StringTranslate;
 import net.minecraft.src.mod_BuildRegion;
 
 import com.bencvt.minecraft.buildregion.lang.LocalizedString;
 import com.bencvt.minecraft.buildregion.region.Direction3D;
+import com.bencvt.minecraft.buildregion.region.ReachCube;
 import com.bencvt.minecraft.buildregion.region.RegionBase;
 import com.bencvt.minecraft.buildregion.region.RelativeDirection3D;
 import com.bencvt.minecraft.buildregion.region.Units;
@@ -32,6 +34,12 @@ public class Controller implements LSDEventListener {
     public static final String MOD_VERSION = "2.0.2-SNAPSHOT";
     public static final String MINECRAFT_VERSION = "1.4.5";
     public static final String MIN_LIBSHAPEDRAW_VERSION = "1.3";
+    /**
+     * Denied clicks can arrive every tick (e.g. holding the button in
+     * creative mode). The HUD message lasts much longer than this, so
+     * refreshing it any more often would just create garbage.
+     */
+    public static final long DENY_CLICK_NOTIFY_INTERVAL = 250;
 
     private static Controller instance;
     private final Minecraft minecraft;
@@ -41,9 +49,15 @@ public class Controller implements LSDEventListener {
     private final String modTitle;
     private final File modDirectory;
     private final BuildModeValue buildMode;
+    private final ReachCube reachCube;
+    private final BlockClickHandler blockClickHandler;
     private UpdateCheck updateCheck;
     private RegionBase curRegion;
     private RegionBase prevRegion; // will never be null
+    private long lastDenyClickNotify;
+    /** hud.misclicked, translated once per language rather than per click. */
+    private String denyClickMessage;
+    private String denyClickMessageLang;
 
     public Controller(mod_BuildRegion mod) {
         if (instance != null) {
@@ -58,10 +72,11 @@ public class Controller implements LSDEventListener {
         modTitle = mod.getName() + " v" + MOD_VERSION;
         modDirectory = new File(Minecraft.getMinecraftDir(), "mods" + File.separator + mod.getName());
         buildMode = new BuildModeValue(BuildMode.INSIDE);
+        reachCube = new ReachCube();
         cmdReset();
 
         // Register for PlayerControllerHooks events.
-        new BlockClickHandler(this);
+        blockClickHandler = new BlockClickHandler(this);
 
         // Register for LibShapeDraw events.
         if (!libshapedraw.ApiInfo.isVersionAtLeast(MIN_LIBSHAPEDRAW_VERSION)) {
@@ -80,6 +95,7 @@ public class Controller implements LSDEventListener {
         buildMode.setValueNoAnimation(BuildMode.INSIDE);
         curRegion = null;
         prevRegion = RegionBase.DEFAULT_REGION;
+        reachCube.invalidate();
         shapeManager.reset();
         return true;
     }
@@ -90,6 +106,7 @@ public class Controller implements LSDEventListener {
         }
         prevRegion = curRegion;
         curRegion = null;
+        reachCube.invalidate();
         shapeManager.updateRegion(curRegion, animate);
         messageManager.info(i18n("hud.cleared"));
         return true;
@@ -103,6 +120,7 @@ public class Controller implements LSDEventListener {
             prevRegion = curRegion;
         }
         curRegion = newRegion;
+        reachCube.invalidate();
 
         // Update UI.
         shapeManager.updateRegion(curRegion, animate);
@@ -193,11 +211,21 @@ public class Controller implements LSDEventListener {
             }
             updateCheck.setResult(null);
         }
+        final BlockFlags blockFlags = blockClickHandler.getBlockFlags();
+        if (blockFlags.getLoadErrors() != null) {
+            for (String line : blockFlags.getLoadErrors().split("\n")) {
+                messageManager.chat(line);
+            }
+            blockFlags.setLoadErrors(null);
+        }
     }
 
     @Override
     public void onPreRender(LSDPreRenderEvent event) {
-        shapeManager.updateObserverPosition(event.getPlayerCoords());
+        final ReadonlyVector3 playerCoords = event.getPlayerCoords();
+        reachCube.update(curRegion, playerCoords.getX(), playerCoords.getY(), playerCoords.getZ());
+        shapeManager.updateObserverPosition(playerCoords);
+        shapeManager.runPendingWork();
     }
 
     // ========
@@ -211,17 +239,39 @@ public class Controller implements LSDEventListener {
     }
 
     public void notifyDenyClick() {
-        messageManager.info(i18n("hud.misclicked"));
+        final long now = System.currentTimeMillis();
+        if (now - lastDenyClickNotify < DENY_CLICK_NOTIFY_INTERVAL) {
+            return;
+        }
+        lastDenyClickNotify = now;
+        final String lang = StringTranslate.getInstance().getCurrentLanguage();
+        if (!lang.equals(denyClickMessageLang)) {
+            denyClickMessageLang = lang;
+            denyClickMessage = i18n("hud.misclicked");
+        }
+        messageManager.info(denyClickMessage);
     }
 
     // ========
     // Misc accessors
     // ========
 
+    public static Controller getInstance() {
+        return instance;
+    }
+
+    public BlockClickHandler getBlockClickHandler() {
+        return blockClickHandler;
+    }
+
     public InputManager getInputManager() {
         return inputManager;
     }
 
+    public MessageManager getMessageManager() {
+        return messageManager;
+    }
+
     public String getModTitle() {
         return modTitle;
     }
@@ -238,6 +288,14 @@ public class Controller implements LSDEventListener {
         return curRegion;
     }
 
+    /**
+     * Same as getCurRegion().isInsideBlock, but faster for blocks
+     * within the player's reach.
+     */
+    public boolean isInsideCurRegion(int x, int y, int z) {
+        return reachCube.isInsideBlock(curRegion, x, y, z);
+    }
+
     public RegionBase getPrototypeRegion() {
         if (curRegion != null) {
             return curRegion;
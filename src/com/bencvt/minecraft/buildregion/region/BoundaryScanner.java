@@ -0,0 +1,153 @@
+package com.bencvt.minecraft.buildregion.region;
+
+import java.util.Arrays;
+
+import com.bencvt.minecraft.buildregion.region.RegionBase.BoundaryVisitor;
+import com.bencvt.minecraft.buildregion.region.RegionBase.SpanVisitor;
+
+/**
+ * Find a region's boundary blocks, i.e. blocks inside the region with at
+ * least one face bordering a block outside the region.
+ * <p>
+ * Works from the region's row spans rather than by probing each block's
+ * neighbors, so the amount of work is proportional to the number of spans
+ * plus the number of boundary blocks, not the region's volume.
+ * 
+ * @see RegionBase#getBoundaryBlocks(int, int, int, int, int, int, BoundaryVisitor)
+ * @author bencvt
+ */
+class BoundaryScanner implements SpanVisitor {
+    // Spans are stored for the requested rows plus a 1-row border, so that
+    // every row's neighbors are available.
+    private final int minX;
+    private final int maxX;
+    private final int rowsY;
+    private final int rowsZ;
+    private final int rowMinY;
+    private final int rowMinZ;
+    /** Index of the first span of each row; rowStart[rowCount] is the total. */
+    private final int[] rowStart;
+    private int[] spanX0;
+    private int[] spanX1;
+    private int spanCount;
+    private int lastRow;
+
+    protected BoundaryScanner(RegionBase region, int minX, int maxX, int minY, int maxY, int minZ, int maxZ) {
+        this.minX = minX;
+        this.maxX = maxX;
+        rowMinY = minY - 1;
+        rowMinZ = minZ - 1;
+        rowsY = maxY - minY + 3;
+        rowsZ = maxZ - minZ + 3;
+        rowStart = new int[rowsY * rowsZ + 1];
+        spanX0 = new int[64];
+        spanX1 = new int[64];
+        region.getSpans(rowMinY, maxY + 1, rowMinZ, maxZ + 1, this);
+        // Close out the remaining rows.
+        for (int row = lastRow + 1; row < rowStart.length; row++) {
+            rowStart[row] = spanCount;
+        }
+    }
+
+    @Override
+    public void visitSpan(int y, int z, int x0, int x1) {
+        // Spans outside the requested x range (plus a 1-block border) are
+        // irrelevant. Clipping here also tames infinite spans.
+        x0 = Math.max(x0, minX - 1);
+        x1 = Math.min(x1, maxX + 1);
+        if (x0 > x1) {
+            return;
+        }
+        // getSpans visits rows in order, so we can fill in the row index as
+        // we go.
+        final int row = (z - rowMinZ) * rowsY + (y - rowMinY);
+        for (int r = lastRow + 1; r <= row; r++) {
+            rowStart[r] = spanCount;
+        }
+        lastRow = Math.max(lastRow, row);
+        if (spanCount == spanX0.length) {
+            spanX0 = Arrays.copyOf(spanX0, spanCount * 2);
+            spanX1 = Arrays.copyOf(spanX1, spanCount * 2);
+        }
+        spanX0[spanCount] = x0;
+        spanX1[spanCount] = x1;
+        spanCount++;
+    }
+
+    /**
+     * Visit every boundary block in the requested range, in the same order
+     * as spans are visited.
+     */
+    public void visitBoundaryBlocks(BoundaryVisitor visitor) {
+        for (int zi = 1; zi < rowsZ - 1; zi++) {
+            for (int yi = 1; yi < rowsY - 1; yi++) {
+                final int row = zi * rowsY + yi;
+                final int rowDown = row - 1;
+                final int rowUp = row + 1;
+                final int rowNorth = row - rowsY;
+                final int rowSouth = row + rowsY;
+                int cursorDown = rowStart[rowDown];
+                int cursorUp = rowStart[rowUp];
+                int cursorNorth = rowStart[rowNorth];
+                int cursorSouth = rowStart[rowSouth];
+                for (int i = rowStart[row]; i < rowStart[row + 1]; i++) {
+                    final int a = spanX0[i];
+                    final int b = spanX1[i];
+                    final int end = Math.min(b, maxX);
+                    int x = Math.max(a, minX);
+                    while (x <= end) {
+                        cursorDown = seek(cursorDown, rowStart[rowDown + 1], x);
+                        cursorUp = seek(cursorUp, rowStart[rowUp + 1], x);
+                        cursorNorth = seek(cursorNorth, rowStart[rowNorth + 1], x);
+                        cursorSouth = seek(cursorSouth, rowStart[rowSouth + 1], x);
+                        int faces = 0;
+                        if (x == a) {
+                            faces |= BoundaryVisitor.FACE_WEST;
+                        }
+                        if (x == b) {
+                            faces |= BoundaryVisitor.FACE_EAST;
+                        }
+                        if (!contains(cursorDown, rowStart[rowDown + 1], x)) {
+                            faces |= BoundaryVisitor.FACE_DOWN;
+                        }
+                        if (!contains(cursorUp, rowStart[rowUp + 1], x)) {
+                            faces |= BoundaryVisitor.FACE_UP;
+                        }
+                        if (!contains(cursorNorth, rowStart[rowNorth + 1], x)) {
+                            faces |= BoundaryVisitor.FACE_NORTH;
+                        }
+                        if (!contains(cursorSouth, rowStart[rowSouth + 1], x)) {
+                            faces |= BoundaryVisitor.FACE_SOUTH;
+                        }
+                        if (faces != 0) {
+                            visitor.visitBoundaryBlock(x, rowMinY + yi, rowMinZ + zi, faces);
+                            x++;
+                        } else {
+                            // Skip ahead past the interior blocks: all four
+                            // neighboring rows contain x, and x isn't at
+                            // either end of its own span.
+                            int next = b - 1;
+                            next = Math.min(next, spanX1[cursorDown]);
+                            next = Math.min(next, spanX1[cursorUp]);
+                            next = Math.min(next, spanX1[cursorNorth]);
+                            next = Math.min(next, spanX1[cursorSouth]);
+                            x = next + 1;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /** @return the index of the first span in [cursor, limit) that ends at or after x */
+    private int seek(int cursor, int limit, int x) {
+        while (cursor < limit && spanX1[cursor] < x) {
+            cursor++;
+        }
+        return cursor;
+    }
+
+    private boolean contains(int cursor, int limit, int x) {
+        return cursor < limit && spanX0[cursor] <= x;
+    }
+}
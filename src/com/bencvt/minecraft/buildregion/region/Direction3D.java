@@ -22,7 +22,12 @@ public enum Direction3D {
     private Direction3D back;
     private Direction3D left;
     private Direction3D right;
+    /** Indexed by value. values() clones the array on every call. */
+    private static final Direction3D[] byValue = new Direction3D[values().length];
     static {
+        for (Direction3D dir : values()) {
+            byValue[dir.value] = dir;
+        }
         DOWN.back = UP;
         DOWN.left = DOWN;
         DOWN.right = DOWN;
@@ -76,12 +81,10 @@ public enum Direction3D {
     }
 
     public static Direction3D fromValue(int value) {
-        for (Direction3D dir : Direction3D.values()) {
-            if (dir.value == value) {
-                return dir;
-            }
+        if (value < 0 || value >= byValue.length) {
+            return null;
         }
-        return null;
+        return byValue[value];
     }
 
     /**
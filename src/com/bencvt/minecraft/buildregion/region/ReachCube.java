@@ -0,0 +1,141 @@
+package com.bencvt.minecraft.buildregion.region;
+
+/**
+ * A small bit-packed cube of region membership centered on the player,
+ * covering every block the player can reach. Block clicks are then a single
+ * bit test no matter how complex the region is.
+ * <p>
+ * Call update once per frame. When the player crosses a block boundary, only
+ * the blocks that scrolled into the cube are evaluated; the rest are copied
+ * over. The cube is rebuilt from scratch when the region or its shape
+ * changes, and queries for a different region or outside the cube fall
+ * through to the region itself, so a stale cube is never consulted.
+ * <p>
+ * Not thread-safe; use from the main thread only.
+ *
+ * @author bencvt
+ */
+public class ReachCube {
+    /** Blocks per side. Comfortably more than twice the reach distance. */
+    public static final int SIZE = 16;
+    private static final int HALF = SIZE / 2;
+
+    private RegionBase region;
+    private int shapeVersion;
+    private int lowerX;
+    private int lowerY;
+    private int lowerZ;
+    private long[] bits = new long[SIZE * SIZE * SIZE / 64];
+    /** The previous bits, kept to be reused when scrolling. */
+    private long[] prevBits = new long[bits.length];
+
+    /**
+     * Recenter the cube on the player's block, if needed.
+     *
+     * @param region the current region, or null if there isn't one
+     */
+    public void update(RegionBase region, double playerX, double playerY, double playerZ) {
+        if (region == null) {
+            invalidate();
+            return;
+        }
+        final int newLowerX = (int) Math.floor(playerX) - HALF;
+        final int newLowerY = (int) Math.floor(playerY) - HALF;
+        final int newLowerZ = (int) Math.floor(playerZ) - HALF;
+        if (region != this.region || region.getShapeVersion() != shapeVersion) {
+            rebuild(region, newLowerX, newLowerY, newLowerZ);
+        } else if (newLowerX != lowerX || newLowerY != lowerY || newLowerZ != lowerZ) {
+            scroll(newLowerX, newLowerY, newLowerZ);
+        }
+    }
+
+    /**
+     * Forget the current region. Called whenever the region is replaced.
+     */
+    public void invalidate() {
+        region = null;
+    }
+
+    /**
+     * Same as region.isInsideBlock, but a single bit test for blocks within
+     * the cube. Other blocks are tested against the region directly.
+     */
+    public boolean isInsideBlock(RegionBase region, int x, int y, int z) {
+        if (region != this.region || region.getShapeVersion() != shapeVersion) {
+            return region.isInsideBlock(x, y, z);
+        }
+        x -= lowerX;
+        y -= lowerY;
+        z -= lowerZ;
+        if (x < 0 || x >= SIZE || y < 0 || y >= SIZE || z < 0 || z >= SIZE) {
+            return region.isInsideBlock(x + lowerX, y + lowerY, z + lowerZ);
+        }
+        final int index = getIndex(x, y, z);
+        return (bits[index >>> 6] & (1L << index)) != 0;
+    }
+
+    private static int getIndex(int x, int y, int z) {
+        return (z * SIZE + y) * SIZE + x;
+    }
+
+    private void rebuild(RegionBase region, int newLowerX, int newLowerY, int newLowerZ) {
+        this.region = region;
+        shapeVersion = region.getShapeVersion();
+        lowerX = newLowerX;
+        lowerY = newLowerY;
+        lowerZ = newLowerZ;
+        final long[] b = bits;
+        for (int i = 0; i < b.length; i++) {
+            b[i] = 0L;
+        }
+        region.getSpans(lowerY, lowerY + SIZE - 1, lowerZ, lowerZ + SIZE - 1, new RegionBase.SpanVisitor() {
+            @Override
+            public void visitSpan(int y, int z, int x0, int x1) {
+                x0 = Math.max(x0, lowerX);
+                x1 = Math.min(x1, lowerX + SIZE - 1);
+                for (int x = x0; x <= x1; x++) {
+                    final int index = getIndex(x - lowerX, y - lowerY, z - lowerZ);
+                    b[index >>> 6] |= 1L << index;
+                }
+            }
+        });
+    }
+
+    /**
+     * Move the cube, copying the bits that are still covered and evaluating
+     * only the blocks that scrolled in.
+     */
+    private void scroll(int newLowerX, int newLowerY, int newLowerZ) {
+        final long[] old = bits;
+        bits = prevBits;
+        prevBits = old;
+        final int dx = newLowerX - lowerX;
+        final int dy = newLowerY - lowerY;
+        final int dz = newLowerZ - lowerZ;
+        for (int z = 0; z < SIZE; z++) {
+            final int oldZ = z + dz;
+            for (int y = 0; y < SIZE; y++) {
+                final int oldY = y + dy;
+                for (int x = 0; x < SIZE; x++) {
+                    final int oldX = x + dx;
+                    final boolean inside;
+                    if (oldX >= 0 && oldX < SIZE && oldY >= 0 && oldY < SIZE && oldZ >= 0 && oldZ < SIZE) {
+                        final int oldIndex = getIndex(oldX, oldY, oldZ);
+                        inside = (old[oldIndex >>> 6] & (1L << oldIndex)) != 0;
+                    } else {
+                        inside = region.isInsideBlock(newLowerX + x, newLowerY + y, newLowerZ + z);
+                    }
+                    final int index = getIndex(x, y, z);
+                    if (inside) {
+                        bits[index >>> 6] |= 1L << index;
+                    } else {
+                        bits[index >>> 6] &= ~(1L << index);
+                    }
+                }
+            }
+        }
+        lowerX = newLowerX;
+        lowerY = newLowerY;
+        lowerZ = newLowerZ;
+    }
+}
@@ -1,5 +1,7 @@
 package com.bencvt.minecraft.buildregion.region;
 
+import java.util.Arrays;
+
 import libshapedraw.primitive.Axis;
 import libshapedraw.primitive.ReadonlyVector3;
 import libshapedraw.primitive.Vector3;
@@ -16,8 +18,76 @@ public abstract class RegionBase {
     // TODO: remember the type (but not the dimensions) of the last region used by the player between sessions
     public static final RegionBase DEFAULT_REGION = new RegionPlane(Vector3.ZEROS, Axis.X);
 
+    /**
+     * Callback for getSpans. The parameters are primitives so that
+     * rasterizing a region doesn't allocate anything per row.
+     */
+    public interface SpanVisitor {
+        /**
+         * Blocks x0 through x1 (inclusive) of row (y,z) are inside the
+         * region. For regions that are infinite along the x axis, x0 and/or
+         * x1 may be Integer.MIN_VALUE/Integer.MAX_VALUE.
+         */
+        public void visitSpan(int y, int z, int x0, int x1);
+    }
+
+    /**
+     * Callback for getBoundaryBlocks.
+     */
+    public interface BoundaryVisitor {
+        public static final int FACE_DOWN  = 1 << Direction3D.DOWN.value;
+        public static final int FACE_UP    = 1 << Direction3D.UP.value;
+        public static final int FACE_NORTH = 1 << Direction3D.NORTH.value;
+        public static final int FACE_SOUTH = 1 << Direction3D.SOUTH.value;
+        public static final int FACE_WEST  = 1 << Direction3D.WEST.value;
+        public static final int FACE_EAST  = 1 << Direction3D.EAST.value;
+
+        /**
+         * The block at (x,y,z) is inside the region and borders at least one
+         * block outside the region.
+         * 
+         * @param exposedFaces bitmask of FACE_* constants, one for each face
+         *                     bordering a block outside the region
+         */
+        public void visitBoundaryBlock(int x, int y, int z, int exposedFaces);
+    }
+
+    /**
+     * Identifies a region's shape independent of its position. Regions with
+     * equal keys contain the same blocks relative to the lower corners of
+     * their AABBs.
+     */
+    public static final class ShapeKey {
+        private final RegionType regionType;
+        private final Axis axis;
+        private final double[] values;
+        private final int hashCode;
+
+        private ShapeKey(RegionType regionType, Axis axis, double[] values) {
+            this.regionType = regionType;
+            this.axis = axis;
+            this.values = values;
+            hashCode = (regionType.hashCode() * 31 + (axis == null ? 0 : axis.hashCode())) * 31 + Arrays.hashCode(values);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof ShapeKey)) {
+                return false;
+            }
+            ShapeKey other = (ShapeKey) obj;
+            return regionType == other.regionType && axis == other.axis && Arrays.equals(values, other.values);
+        }
+    }
+
     private final Vector3 origin;
     private Axis axis;
+    private int shapeVersion;
 
     protected RegionBase(ReadonlyVector3 origin, Axis axis) {
         if (axis == null) {
@@ -55,11 +125,232 @@ public abstract class RegionBase {
         return axis != null;
     }
 
+    /**
+     * Called whenever the region's shape is modified: origin, axis, or any of
+     * the type-specific dimensions. Child classes caching coefficients for
+     * isInsideBlock should refresh them here, then call the super method.
+     */
+    protected void onShapeUpdate() {
+        shapeVersion++;
+    }
+
     /**
      * @return true if the position (x,y,z) is inside this region
      */
     public abstract boolean isInsideRegion(double x, double y, double z);
 
+    /**
+     * Integer fast path for isInsideRegion, used for block clicks and for
+     * rendering. Child classes should override this method with an
+     * implementation that avoids redundant floating point work.
+     * 
+     * @return true if the block at (x,y,z) is inside this region
+     */
+    public boolean isInsideBlock(int x, int y, int z) {
+        return isInsideRegion(x, y, z);
+    }
+
+    /**
+     * Rasterize the region: for each (y,z) row in the specified range, visit
+     * the inclusive x-intervals of blocks inside the region. Rows are visited
+     * in order of increasing z, then increasing y; spans within a row are
+     * visited in order of increasing x.
+     * <p>
+     * This generic implementation scans each row of the AABB block by block.
+     * Child classes should override it with an analytic version.
+     */
+    public void getSpans(int minY, int maxY, int minZ, int maxZ, SpanVisitor visitor) {
+        Vector3 lower = new Vector3();
+        Vector3 upper = new Vector3();
+        if (!getAABB(lower, upper)) {
+            return;
+        }
+        Units.WHOLE.clamp(lower);
+        Units.WHOLE.clamp(upper);
+        final int lowerX = (int) lower.getX();
+        final int upperX = (int) upper.getX();
+        minY = Math.max(minY, (int) lower.getY());
+        maxY = Math.min(maxY, (int) upper.getY());
+        minZ = Math.max(minZ, (int) lower.getZ());
+        maxZ = Math.min(maxZ, (int) upper.getZ());
+        for (int z = minZ; z <= maxZ; z++) {
+            for (int y = minY; y <= maxY; y++) {
+                int start = lowerX;
+                for (int x = lowerX; x <= upperX + 1; x++) {
+                    if (x <= upperX && isInsideBlock(x, y, z)) {
+                        continue;
+                    }
+                    if (start < x) {
+                        visitor.visitSpan(y, z, start, x - 1);
+                    }
+                    start = x + 1;
+                }
+            }
+        }
+    }
+
+    /**
+     * Rasterize every row of the region's AABB.
+     * @see #getSpans(int, int, int, int, SpanVisitor)
+     * @return false if this region is infinite, in which case no spans were
+     *         visited
+     */
+    public final boolean getSpans(SpanVisitor visitor) {
+        Vector3 lower = new Vector3();
+        Vector3 upper = new Vector3();
+        if (!getAABB(lower, upper)) {
+            return false;
+        }
+        Units.WHOLE.clamp(lower);
+        Units.WHOLE.clamp(upper);
+        getSpans((int) lower.getY(), (int) upper.getY(), (int) lower.getZ(), (int) upper.getZ(), visitor);
+        return true;
+    }
+
+    /**
+     * Visit every block inside both the region and the specified box that
+     * has at least one face bordering a block outside the region. Derived
+     * from the region's spans, so interior blocks are skipped entirely.
+     */
+    public final void getBoundaryBlocks(int minX, int maxX, int minY, int maxY, int minZ, int maxZ, BoundaryVisitor visitor) {
+        if (minX > maxX || minY > maxY || minZ > maxZ) {
+            return;
+        }
+        new BoundaryScanner(this, minX, maxX, minY, maxY, minZ, maxZ).visitBoundaryBlocks(visitor);
+    }
+
+    /**
+     * Visit every boundary block of the region.
+     * @see #getBoundaryBlocks(int, int, int, int, int, int, BoundaryVisitor)
+     * @return false if this region is infinite, in which case no blocks were
+     *         visited
+     */
+    public final boolean getBoundaryBlocks(BoundaryVisitor visitor) {
+        Vector3 lower = new Vector3();
+        Vector3 upper = new Vector3();
+        if (!getAABB(lower, upper)) {
+            return false;
+        }
+        Units.WHOLE.clamp(lower);
+        Units.WHOLE.clamp(upper);
+        getBoundaryBlocks(
+                (int) lower.getX(), (int) upper.getX(),
+                (int) lower.getY(), (int) upper.getY(),
+                (int) lower.getZ(), (int) upper.getZ(),
+                visitor);
+        return true;
+    }
+
+    /**
+     * Helper method for child classes implementing getSpans: visit the span
+     * of row (y,z) that is centered on centerX and extends halfWidth in each
+     * direction, exclusive. The floating point endpoints are nudged as needed
+     * so the result always agrees with isInsideBlock.
+     */
+    protected final void visitSpanAround(int y, int z, double centerX, double halfWidth, SpanVisitor visitor) {
+        int x0 = (int) Math.ceil(centerX - halfWidth);
+        int x1 = (int) Math.floor(centerX + halfWidth);
+        while (x0 <= x1 && !isInsideBlock(x0, y, z)) {
+            x0++;
+        }
+        while (x0 <= x1 && !isInsideBlock(x1, y, z)) {
+            x1--;
+        }
+        if (x0 > x1) {
+            return;
+        }
+        while (isInsideBlock(x0 - 1, y, z)) {
+            x0--;
+        }
+        while (isInsideBlock(x1 + 1, y, z)) {
+            x1++;
+        }
+        visitor.visitSpan(y, z, x0, x1);
+    }
+
+    /**
+     * Helper method for child classes implementing getAABB: set the axis
+     * component of lower and upper to the extent of the row of blocks along
+     * that axis through (x,y,z). The row is centered on center and extends
+     * halfWidth in each direction, exclusive. As with visitSpanAround, the
+     * floating point endpoints are nudged to agree with isInsideBlock.
+     * <p>
+     * If the row is empty, upper is set to one less than lower.
+     */
+    protected final void setAABBAround(Axis axis, int x, int y, int z, double center, double halfWidth,
+            Vector3 lower, Vector3 upper) {
+        final int[] block = new int[] {x, y, z};
+        final int i = axis.ordinal();
+        int c0 = (int) Math.ceil(center - halfWidth);
+        int c1 = (int) Math.floor(center + halfWidth);
+        while (c0 <= c1 && !isInsideBlock(block, i, c0)) {
+            c0++;
+        }
+        while (c0 <= c1 && !isInsideBlock(block, i, c1)) {
+            c1--;
+        }
+        if (c0 > c1) {
+            lower.setComponent(axis, block[i]);
+            upper.setComponent(axis, block[i] - 1);
+            return;
+        }
+        while (isInsideBlock(block, i, c0 - 1)) {
+            c0--;
+        }
+        while (isInsideBlock(block, i, c1 + 1)) {
+            c1++;
+        }
+        lower.setComponent(axis, c0);
+        upper.setComponent(axis, c1);
+    }
+
+    private boolean isInsideBlock(int[] block, int i, int coord) {
+        block[i] = coord;
+        return isInsideBlock(block[0], block[1], block[2]);
+    }
+
+    /**
+     * Child classes that can be identified by a handful of dimensions should
+     * override this method and return createShapeKey(...).
+     * 
+     * @return a key identifying this region's shape regardless of its
+     *         position, or null if not supported by this region type
+     */
+    public ShapeKey getShapeKey() {
+        return null;
+    }
+
+    /**
+     * Helper method for child classes implementing getShapeKey. Translating
+     * the region by whole blocks leaves the key unchanged, but moving it by
+     * half a block does not.
+     * 
+     * @param axis the region's axis, or null if it doesn't affect the shape
+     * @param dimensions the type-specific dimensions, e.g. radii
+     */
+    protected final ShapeKey createShapeKey(Axis axis, ReadonlyVector3 dimensions) {
+        return new ShapeKey(getRegionType(), axis, new double[] {
+                origin.getX() - Math.floor(origin.getX()),
+                origin.getY() - Math.floor(origin.getY()),
+                origin.getZ() - Math.floor(origin.getZ()),
+                dimensions.getX(),
+                dimensions.getY(),
+                dimensions.getZ()});
+    }
+
+    /**
+     * Helper method for regions that wrap another region, e.g. to resample
+     * it, implementing getShapeKey.
+     * 
+     * @param sourceKey the wrapped region's key
+     * @param parameters whatever else affects the wrapper's shape
+     */
+    protected final ShapeKey createShapeKey(ShapeKey sourceKey, double... parameters) {
+        final double[] values = Arrays.copyOf(sourceKey.values, sourceKey.values.length + parameters.length);
+        System.arraycopy(parameters, 0, values, sourceKey.values.length, parameters.length);
+        return new ShapeKey(sourceKey.regionType, sourceKey.axis, values);
+    }
+
     public abstract double getSize();
 
     /**
@@ -94,18 +385,21 @@ public abstract class RegionBase {
     public final RegionBase setOriginCoord(Axis axis, double value) {
         origin.setComponent(axis, value);
         onOriginUpdate();
+        onShapeUpdate();
         return this;
     }
 
     public final RegionBase setOriginCoords(ReadonlyVector3 newOrigin) {
         origin.set(newOrigin);
         onOriginUpdate();
+        onShapeUpdate();
         return this;
     }
 
     public final RegionBase addOriginCoord(Axis axis, double amount) {
         origin.addComponent(axis, amount);
         onOriginUpdate();
+        onShapeUpdate();
         return this;
     }
 
@@ -118,9 +412,17 @@ public abstract class RegionBase {
             throw new IllegalArgumentException();
         }
         this.axis = axis;
+        onShapeUpdate();
         return this;
     }
 
+    /**
+     * Incremented every time the region's shape is modified.
+     */
+    public final int getShapeVersion() {
+        return shapeVersion;
+    }
+
     public static String i18n(String key, Object ... args) {
         return LocalizedString.translate(key, args);
     }
@@ -15,13 +15,20 @@ public class RegionCuboid extends RegionBase {
     private final Vector3 lowerCorner;
     private final Vector3 upperCorner;
     private final double atom;
+    // Inclusive block bounds, cached for isInsideBlock.
+    private int blockLowerX;
+    private int blockLowerY;
+    private int blockLowerZ;
+    private int blockUpperX;
+    private int blockUpperY;
+    private int blockUpperZ;
 
     protected RegionCuboid(ReadonlyVector3 lowerCorner, ReadonlyVector3 upperCorner, Axis axis) {
         super(lowerCorner.copy().midpoint(upperCorner), axis);
         this.lowerCorner = lowerCorner.copy();
         this.upperCorner = upperCorner.copy();
         atom = getUnits(null).atom;
-        normalize();
+        onShapeUpdate();
     }
 
     @Override
@@ -79,6 +86,18 @@ public class RegionCuboid extends RegionBase {
         getOriginMutable().set(lowerCorner).midpoint(upperCorner);
     }
 
+    @Override
+    protected void onShapeUpdate() {
+        normalize();
+        blockLowerX = (int) Math.ceil(lowerCorner.getX());
+        blockLowerY = (int) Math.ceil(lowerCorner.getY());
+        blockLowerZ = (int) Math.ceil(lowerCorner.getZ());
+        blockUpperX = (int) Math.floor(upperCorner.getX());
+        blockUpperY = (int) Math.floor(upperCorner.getY());
+        blockUpperZ = (int) Math.floor(upperCorner.getZ());
+        super.onShapeUpdate();
+    }
+
     @Override
     public boolean isInsideRegion(double x, double y, double z) {
         normalize();
@@ -90,6 +109,29 @@ public class RegionCuboid extends RegionBase {
                 z >= lowerCorner.getZ() && z <= upperCorner.getZ());
     }
 
+    @Override
+    public boolean isInsideBlock(int x, int y, int z) {
+        return (x >= blockLowerX && x <= blockUpperX &&
+                y >= blockLowerY && y <= blockUpperY &&
+                z >= blockLowerZ && z <= blockUpperZ);
+    }
+
+    @Override
+    public void getSpans(int minY, int maxY, int minZ, int maxZ, SpanVisitor visitor) {
+        minY = Math.max(minY, blockLowerY);
+        maxY = Math.min(maxY, blockUpperY);
+        minZ = Math.max(minZ, blockLowerZ);
+        maxZ = Math.min(maxZ, blockUpperZ);
+        if (blockLowerX > blockUpperX) {
+            return;
+        }
+        for (int z = minZ; z <= maxZ; z++) {
+            for (int y = minY; y <= maxY; y++) {
+                visitor.visitSpan(y, z, blockLowerX, blockUpperX);
+            }
+        }
+    }
+
     @Override
     public double getSize() {
         normalize();
@@ -113,7 +155,7 @@ public class RegionCuboid extends RegionBase {
     public boolean expand(Axis axis, double amount) {
         if (amount >= 0.0 || upperCorner.getComponent(axis) > lowerCorner.getComponent(axis)) {
             upperCorner.addComponent(axis, amount);
-            normalize();
+            onShapeUpdate();
             return true;
         }
         return false;
@@ -178,7 +220,7 @@ public class RegionCuboid extends RegionBase {
                 this.lowerCorner.getX() + getUnits(Axis.X).clampAtom(sizeX) - atom,
                 this.lowerCorner.getY() + getUnits(Axis.Y).clampAtom(sizeY) - atom,
                 this.lowerCorner.getZ() + getUnits(Axis.Z).clampAtom(sizeZ) - atom);
-        normalize();
+        onShapeUpdate();
         return this;
     }
 }
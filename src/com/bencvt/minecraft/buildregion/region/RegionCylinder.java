@@ -16,6 +16,13 @@ import libshapedraw.primitive.Vector3;
  */
 public class RegionCylinder extends RegionBase {
     private final Vector3 halfHeightAndRadii;
+    // Coefficients cached for isInsideBlock.
+    private int blockAxisLower;
+    private int blockAxisUpper;
+    private double originA;
+    private double originB;
+    private double radiusSquaredA;
+    private double radiusSquaredB;
 
     protected RegionCylinder(ReadonlyVector3 origin, Axis axis, double height, double radiusA, double radiusB) {
         super(origin, axis);
@@ -47,6 +54,20 @@ public class RegionCylinder extends RegionBase {
                 Units.WHOLE.clamp(getOriginReadonly().getComponent(getAxis())));
     }
 
+    @Override
+    protected void onShapeUpdate() {
+        final Axis axis = getAxis();
+        final double axisOrigin = getOriginReadonly().getComponent(axis);
+        final double halfHeight = halfHeightAndRadii.getComponent(axis);
+        blockAxisLower = (int) Math.ceil(axisOrigin - halfHeight);
+        blockAxisUpper = (int) Math.floor(axisOrigin + halfHeight);
+        originA = getOriginReadonly().getComponent(getRadiusAxisA());
+        originB = getOriginReadonly().getComponent(getRadiusAxisB());
+        radiusSquaredA = getRadiusA() * getRadiusA();
+        radiusSquaredB = getRadiusB() * getRadiusB();
+        super.onShapeUpdate();
+    }
+
     @Override
     public boolean isInsideRegion(double x, double y, double z) {
         ReadonlyVector3 o = getOriginReadonly();
@@ -57,17 +78,92 @@ public class RegionCylinder extends RegionBase {
         boolean ellipseOk;
         if (getAxis() == Axis.X) {
             axisOk = x >= o.getX() - halfHeight && x <= o.getX() + halfHeight;
-            ellipseOk = Math.pow(y - rA, 2.0) + Math.pow(z - rB, 2.0) < 1.0;
+            ellipseOk = Math.pow(y - o.getY(), 2.0) / Math.pow(rA, 2.0) + Math.pow(z - o.getZ(), 2.0) / Math.pow(rB, 2.0) < 1.0;
         } else if (getAxis() == Axis.Y) {
             axisOk = y >= o.getY() - halfHeight && y <= o.getY() + halfHeight;
-            ellipseOk = Math.pow(x - rA, 2.0) + Math.pow(z - rB, 2.0) < 1.0;
+            ellipseOk = Math.pow(z - o.getZ(), 2.0) / Math.pow(rA, 2.0) + Math.pow(x - o.getX(), 2.0) / Math.pow(rB, 2.0) < 1.0;
         } else {
             axisOk = z >= o.getZ() - halfHeight && z <= o.getZ() + halfHeight;
-            ellipseOk = Math.pow(x - rA, 2.0) + Math.pow(y - rB, 2.0) < 1.0;
+            ellipseOk = Math.pow(x - o.getX(), 2.0) / Math.pow(rA, 2.0) + Math.pow(y - o.getY(), 2.0) / Math.pow(rB, 2.0) < 1.0;
         }
         return axisOk && ellipseOk;
     }
 
+    @Override
+    public boolean isInsideBlock(int x, int y, int z) {
+        final int axisCoord;
+        final double dA;
+        final double dB;
+        if (getAxis() == Axis.X) {
+            axisCoord = x;
+            dA = y - originA;
+            dB = z - originB;
+        } else if (getAxis() == Axis.Y) {
+            axisCoord = y;
+            dA = z - originA;
+            dB = x - originB;
+        } else {
+            axisCoord = z;
+            dA = x - originA;
+            dB = y - originB;
+        }
+        return axisCoord >= blockAxisLower && axisCoord <= blockAxisUpper &&
+                dA*dA/radiusSquaredA + dB*dB/radiusSquaredB < 1.0;
+    }
+
+    @Override
+    public void getSpans(int minY, int maxY, int minZ, int maxZ, SpanVisitor visitor) {
+        final double radiusA = getRadiusA();
+        final double radiusB = getRadiusB();
+        if (getAxis() == Axis.X) {
+            if (blockAxisLower > blockAxisUpper) {
+                return;
+            }
+            minY = Math.max(minY, (int) Math.floor(originA - radiusA));
+            maxY = Math.min(maxY, (int) Math.ceil(originA + radiusA));
+            minZ = Math.max(minZ, (int) Math.floor(originB - radiusB));
+            maxZ = Math.min(maxZ, (int) Math.ceil(originB + radiusB));
+            for (int z = minZ; z <= maxZ; z++) {
+                for (int y = minY; y <= maxY; y++) {
+                    if (isInsideBlock(blockAxisLower, y, z)) {
+                        visitor.visitSpan(y, z, blockAxisLower, blockAxisUpper);
+                    }
+                }
+            }
+        } else if (getAxis() == Axis.Y) {
+            minY = Math.max(minY, blockAxisLower);
+            maxY = Math.min(maxY, blockAxisUpper);
+            minZ = Math.max(minZ, (int) Math.floor(originA - radiusA));
+            maxZ = Math.min(maxZ, (int) Math.ceil(originA + radiusA));
+            for (int z = minZ; z <= maxZ; z++) {
+                final double dA = z - originA;
+                final double t = dA*dA/radiusSquaredA;
+                if (t >= 1.0) {
+                    continue;
+                }
+                final double halfWidth = radiusB * Math.sqrt(1.0 - t);
+                for (int y = minY; y <= maxY; y++) {
+                    visitSpanAround(y, z, originB, halfWidth, visitor);
+                }
+            }
+        } else {
+            minY = Math.max(minY, (int) Math.floor(originB - radiusB));
+            maxY = Math.min(maxY, (int) Math.ceil(originB + radiusB));
+            minZ = Math.max(minZ, blockAxisLower);
+            maxZ = Math.min(maxZ, blockAxisUpper);
+            for (int z = minZ; z <= maxZ; z++) {
+                for (int y = minY; y <= maxY; y++) {
+                    final double dB = y - originB;
+                    final double t = dB*dB/radiusSquaredB;
+                    if (t >= 1.0) {
+                        continue;
+                    }
+                    visitSpanAround(y, z, originA, radiusA * Math.sqrt(1.0 - t), visitor);
+                }
+            }
+        }
+    }
+
     @Override
     public double getSize() {
         return Math.PI * 2.0 * halfHeightAndRadii.getX() * halfHeightAndRadii.getY() * halfHeightAndRadii.getZ();
@@ -75,12 +171,33 @@ public class RegionCylinder extends RegionBase {
 
     @Override
     public boolean getAABB(Vector3 lower, Vector3 upper) {
-        lower.set(getOriginReadonly()).subtract(halfHeightAndRadii);
-        upper.set(getOriginReadonly()).add(halfHeightAndRadii);
-        // TODO: fix
+        lower.setComponent(getAxis(), blockAxisLower);
+        upper.setComponent(getAxis(), blockAxisUpper);
+        // The widest row along each radius axis passes through the block
+        // nearest the origin on the other one.
+        final int nearA = (int) Math.floor(originA + 0.5);
+        final int nearB = (int) Math.floor(originB + 0.5);
+        final double tA = Math.pow(nearA - originA, 2.0) / radiusSquaredA;
+        final double tB = Math.pow(nearB - originB, 2.0) / radiusSquaredB;
+        final Vector3 block = new Vector3();
+        block.setComponent(getAxis(), blockAxisLower);
+        block.setComponent(getRadiusAxisA(), nearA);
+        block.setComponent(getRadiusAxisB(), nearB);
+        final int x = (int) block.getX();
+        final int y = (int) block.getY();
+        final int z = (int) block.getZ();
+        setAABBAround(getRadiusAxisA(), x, y, z, originA,
+                getRadiusA() * Math.sqrt(Math.max(0.0, 1.0 - tB)), lower, upper);
+        setAABBAround(getRadiusAxisB(), x, y, z, originB,
+                getRadiusB() * Math.sqrt(Math.max(0.0, 1.0 - tA)), lower, upper);
         return true;
     }
 
+    @Override
+    public ShapeKey getShapeKey() {
+        return createShapeKey(getAxis(), halfHeightAndRadii);
+    }
+
     @Override
     public Units getUnits(Axis axis) {
         return axis == this.getAxis() ? Units.WHOLE : Units.HALF;
@@ -94,6 +211,7 @@ public class RegionCylinder extends RegionBase {
         }
         double prev = halfHeightAndRadii.getComponent(axis);
         Units.HALF.clampAtom(halfHeightAndRadii.addComponent(axis, amount));
+        onShapeUpdate();
         return halfHeightAndRadii.getComponent(axis) != prev;
     }
 
@@ -129,6 +247,7 @@ public class RegionCylinder extends RegionBase {
     public RegionBase setAxis(Axis axis) {
         super.setAxis(axis);
         onOriginUpdate();
+        onShapeUpdate();
         return this;
     }
 
@@ -137,6 +256,7 @@ public class RegionCylinder extends RegionBase {
     }
     public RegionCylinder setHeight(double height) {
         halfHeightAndRadii.setComponent(getAxis(), Units.HALF.clampAtom(height * 0.5));
+        onShapeUpdate();
         return this;
     }
 
@@ -145,6 +265,7 @@ public class RegionCylinder extends RegionBase {
     }
     public RegionCylinder setRadiusA(double radiusA) {
         halfHeightAndRadii.setComponent(getAxis().next(), Units.HALF.clampAtom(radiusA));
+        onShapeUpdate();
         return this;
     }
 
@@ -153,6 +274,7 @@ public class RegionCylinder extends RegionBase {
     }
     public RegionCylinder setRadiusB(double radiusB) {
         halfHeightAndRadii.setComponent(getAxis().next().next(), Units.HALF.clampAtom(radiusB));
+        onShapeUpdate();
         return this;
     }
 
@@ -11,8 +11,11 @@ import libshapedraw.primitive.Vector3;
  * @author bencvt
  */
 public class RegionPlane extends RegionBase {
+    private int blockCoord; // cached for isInsideBlock
+
     protected RegionPlane(ReadonlyVector3 origin, Axis axis) {
         super(origin, axis);
+        onShapeUpdate();
     }
 
     @Override
@@ -30,6 +33,12 @@ public class RegionPlane extends RegionBase {
         Units.WHOLE.clamp(getOriginMutable());
     }
 
+    @Override
+    protected void onShapeUpdate() {
+        blockCoord = (int) getCoord();
+        super.onShapeUpdate();
+    }
+
     @Override
     public boolean canAdjustAlongAxis(boolean expand, Axis axis) {
         return !expand && axis == this.getAxis();
@@ -48,6 +57,39 @@ public class RegionPlane extends RegionBase {
         }
     }
 
+    @Override
+    public boolean isInsideBlock(int x, int y, int z) {
+        if (getAxis() == Axis.X) {
+            return blockCoord == x;
+        } else if (getAxis() == Axis.Y) {
+            return blockCoord == y;
+        } else {
+            return blockCoord == z;
+        }
+    }
+
+    @Override
+    public void getSpans(int minY, int maxY, int minZ, int maxZ, SpanVisitor visitor) {
+        if (getAxis() == Axis.Y) {
+            if (blockCoord < minY || blockCoord > maxY) {
+                return;
+            }
+            minY = maxY = blockCoord;
+        } else if (getAxis() == Axis.Z) {
+            if (blockCoord < minZ || blockCoord > maxZ) {
+                return;
+            }
+            minZ = maxZ = blockCoord;
+        }
+        final int x0 = getAxis() == Axis.X ? blockCoord : Integer.MIN_VALUE;
+        final int x1 = getAxis() == Axis.X ? blockCoord : Integer.MAX_VALUE;
+        for (int z = minZ; z <= maxZ; z++) {
+            for (int y = minY; y <= maxY; y++) {
+                visitor.visitSpan(y, z, x0, x1);
+            }
+        }
+    }
+
     @Override
     public double getSize() {
         return Double.POSITIVE_INFINITY;
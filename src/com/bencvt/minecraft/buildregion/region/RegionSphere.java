@@ -13,6 +13,13 @@ import libshapedraw.primitive.Vector3;
  */
 public class RegionSphere extends RegionBase {
     private final Vector3 radii;
+    // Coefficients cached for isInsideBlock.
+    private double originX;
+    private double originY;
+    private double originZ;
+    private double radiusSquaredX;
+    private double radiusSquaredY;
+    private double radiusSquaredZ;
 
     protected RegionSphere(ReadonlyVector3 origin, ReadonlyVector3 radii, Axis axis) {
         super(origin, axis);
@@ -38,6 +45,17 @@ public class RegionSphere extends RegionBase {
         Units.HALF.clamp(getOriginMutable());
     }
 
+    @Override
+    protected void onShapeUpdate() {
+        originX = getOriginReadonly().getX();
+        originY = getOriginReadonly().getY();
+        originZ = getOriginReadonly().getZ();
+        radiusSquaredX = radii.getX() * radii.getX();
+        radiusSquaredY = radii.getY() * radii.getY();
+        radiusSquaredZ = radii.getZ() * radii.getZ();
+        super.onShapeUpdate();
+    }
+
     @Override
     public boolean isInsideRegion(double x, double y, double z) {
         return    Math.pow(((int) x) - getOriginReadonly().getX(), 2.0) / Math.pow(radii.getX(), 2.0)
@@ -46,6 +64,37 @@ public class RegionSphere extends RegionBase {
                 < 1.0;
     }
 
+    @Override
+    public boolean isInsideBlock(int x, int y, int z) {
+        final double dx = x - originX;
+        final double dy = y - originY;
+        final double dz = z - originZ;
+        return dx*dx/radiusSquaredX + dy*dy/radiusSquaredY + dz*dz/radiusSquaredZ < 1.0;
+    }
+
+    @Override
+    public void getSpans(int minY, int maxY, int minZ, int maxZ, SpanVisitor visitor) {
+        minY = Math.max(minY, (int) Math.floor(originY - radii.getY()));
+        maxY = Math.min(maxY, (int) Math.ceil(originY + radii.getY()));
+        minZ = Math.max(minZ, (int) Math.floor(originZ - radii.getZ()));
+        maxZ = Math.min(maxZ, (int) Math.ceil(originZ + radii.getZ()));
+        for (int z = minZ; z <= maxZ; z++) {
+            final double dz = z - originZ;
+            final double tz = dz*dz/radiusSquaredZ;
+            if (tz >= 1.0) {
+                continue;
+            }
+            for (int y = minY; y <= maxY; y++) {
+                final double dy = y - originY;
+                final double t = dy*dy/radiusSquaredY + tz;
+                if (t >= 1.0) {
+                    continue;
+                }
+                visitSpanAround(y, z, originX, radii.getX() * Math.sqrt(1.0 - t), visitor);
+            }
+        }
+    }
+
     @Override
     public double getSize() {
         return 4.0 / 3.0 * Math.PI * radii.getX() * radii.getY() * radii.getZ();
@@ -53,12 +102,28 @@ public class RegionSphere extends RegionBase {
 
     @Override
     public boolean getAABB(Vector3 lower, Vector3 upper) {
-        lower.set(getOriginReadonly()).subtract(radii);
-        upper.set(getOriginReadonly()).add(radii);
-        // TODO: fix
+        // The widest row along each axis passes through the blocks nearest
+        // the origin on the other two axes.
+        final int nearX = (int) Math.floor(originX + 0.5);
+        final int nearY = (int) Math.floor(originY + 0.5);
+        final int nearZ = (int) Math.floor(originZ + 0.5);
+        final double tX = Math.pow(nearX - originX, 2.0) / radiusSquaredX;
+        final double tY = Math.pow(nearY - originY, 2.0) / radiusSquaredY;
+        final double tZ = Math.pow(nearZ - originZ, 2.0) / radiusSquaredZ;
+        setAABBAround(Axis.X, nearX, nearY, nearZ, originX,
+                radii.getX() * Math.sqrt(Math.max(0.0, 1.0 - tY - tZ)), lower, upper);
+        setAABBAround(Axis.Y, nearX, nearY, nearZ, originY,
+                radii.getY() * Math.sqrt(Math.max(0.0, 1.0 - tX - tZ)), lower, upper);
+        setAABBAround(Axis.Z, nearX, nearY, nearZ, originZ,
+                radii.getZ() * Math.sqrt(Math.max(0.0, 1.0 - tX - tY)), lower, upper);
         return true;
     }
 
+    @Override
+    public ShapeKey getShapeKey() {
+        return createShapeKey(null, radii);
+    }
+
     @Override
     public Units getUnits(Axis axis) {
         return Units.HALF;
@@ -68,6 +133,7 @@ public class RegionSphere extends RegionBase {
     public boolean expand(Axis axis, double amount) {
         double prev = radii.getComponent(axis);
         Units.HALF.clampAtom(radii.addComponent(axis, amount));
+        onShapeUpdate();
         return radii.getComponent(axis) != prev;
     }
 
@@ -94,6 +160,7 @@ public class RegionSphere extends RegionBase {
     }
     public RegionSphere setRadiusX(double radiusX) {
         radii.setX(Math.max(0.5, Units.HALF.clamp(radiusX)));
+        onShapeUpdate();
         return this;
     }
 
@@ -102,6 +169,7 @@ public class RegionSphere extends RegionBase {
     }
     public RegionSphere setRadiusY(double radiusY) {
         radii.setY(Math.max(0.5, Units.HALF.clamp(radiusY)));
+        onShapeUpdate();
         return this;
     }
 
@@ -110,6 +178,7 @@ public class RegionSphere extends RegionBase {
     }
     public RegionSphere setRadiusZ(double radiusZ) {
         radii.setZ(Math.max(0.5, Units.HALF.clamp(radiusZ)));
+        onShapeUpdate();
         return this;
     }
 
@@ -17,6 +17,8 @@ import net.minecraft.src.ScaledResolution;
 public class HUDMessage {
     private final Minecraft minecraft = Minecraft.getMinecraft();
     private final Color color = Color.WHITE.copy();
+    /** The last message and its lines, kept so repeats aren't split again. */
+    private String message;
     private String[] lines;
 
     private boolean isHiddenByGui(boolean highPriority) {
@@ -38,7 +40,10 @@ public class HUDMessage {
         if (isHiddenByGui(highPriority)) {
             return;
         }
-        lines = message.split("\n");
+        if (!message.equals(this.message)) {
+            this.message = message;
+            lines = message.split("\n");
+        }
         if (lines.length > 0) {
             color.set(startColor).animateStart(fadeToColor, fadeDuration);
         }
@@ -46,7 +51,6 @@ public class HUDMessage {
 
     public void clear() {
         color.animateStop();
-        lines = null;
     }
 
     public void render() {
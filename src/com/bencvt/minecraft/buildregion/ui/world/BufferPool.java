@@ -0,0 +1,160 @@
+package com.bencvt.minecraft.buildregion.ui.world;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.lwjgl.opengl.ARBVertexBufferObject;
+
+/**
+ * Pool of OpenGL buffer objects, so rapidly rebuilding meshes (e.g., while
+ * the player holds down an expand key) doesn't keep making the driver
+ * allocate and free VRAM.
+ * <p>
+ * Buffer capacities are rounded up to a power of two, no smaller than
+ * MIN_CAPACITY. That floor is kept small: a section can hold up to six
+ * buffers (vertices and indices for each level of detail), most of them
+ * tiny. Released buffers are kept, grouped by capacity, and handed out again
+ * to meshes that fit. Data is uploaded with glBufferSubData whenever the
+ * buffer is already big enough.
+ * <p>
+ * Only call from the render thread.
+ *
+ * @author bencvt
+ */
+public class BufferPool {
+    public static final int MIN_CAPACITY = 1 << 8;
+    /** Released buffers beyond this many bytes are deleted rather than pooled. */
+    public static final long MAX_POOLED_BYTES = 16L << 20;
+
+    /** Released buffer handles, keyed by capacity. */
+    private static final Map<Integer, List<Integer>> pooled = new HashMap<Integer, List<Integer>>();
+    /** Capacity of every buffer allocated by the pool, pooled or not. */
+    private static final Map<Integer, Integer> capacities = new HashMap<Integer, Integer>();
+    /** Size of the data last uploaded to each buffer in use. */
+    private static final Map<Integer, Integer> sizes = new HashMap<Integer, Integer>();
+    private static long bytesInUse;
+    private static long bytesUsed;
+    private static long bytesPooled;
+
+    /**
+     * Copy data into a buffer object, reusing the specified buffer if it's
+     * big enough. Otherwise it's released and another is acquired.
+     *
+     * @param target GL_ARRAY_BUFFER_ARB or GL_ELEMENT_ARRAY_BUFFER_ARB
+     * @param id the buffer currently holding the data, or 0 if none
+     * @return the buffer now holding the data
+     */
+    public static int upload(int target, int id, ByteBuffer data) {
+        final int size = data.remaining();
+        if (id != 0 && capacities.get(id) < size) {
+            release(id);
+            id = 0;
+        }
+        if (id == 0) {
+            id = acquire(target, getCapacity(size));
+        }
+        ARBVertexBufferObject.glBindBufferARB(target, id);
+        ARBVertexBufferObject.glBufferSubDataARB(target, 0, data);
+        ARBVertexBufferObject.glBindBufferARB(target, 0);
+        final Integer oldSize = sizes.put(id, size);
+        bytesUsed += size - (oldSize == null ? 0 : oldSize);
+        return id;
+    }
+
+    /**
+     * Return a buffer to the pool. If the pool is full the buffer is deleted.
+     */
+    public static void release(int id) {
+        if (id == 0) {
+            return;
+        }
+        final Integer capacity = capacities.get(id);
+        if (capacity == null) {
+            throw new IllegalArgumentException("buffer " + id + " not allocated by pool");
+        }
+        bytesInUse -= capacity;
+        final Integer size = sizes.remove(id);
+        if (size != null) {
+            bytesUsed -= size;
+        }
+        if (bytesPooled + capacity > MAX_POOLED_BYTES) {
+            ARBVertexBufferObject.glDeleteBuffersARB(id);
+            capacities.remove(id);
+            return;
+        }
+        List<Integer> ids = pooled.get(capacity);
+        if (ids == null) {
+            ids = new ArrayList<Integer>();
+            pooled.put(capacity, ids);
+        }
+        ids.add(id);
+        bytesPooled += capacity;
+    }
+
+    /**
+     * Delete every pooled buffer. Buffers in use are unaffected.
+     */
+    public static void clear() {
+        for (List<Integer> ids : pooled.values()) {
+            for (int id : ids) {
+                ARBVertexBufferObject.glDeleteBuffersARB(id);
+                capacities.remove(id);
+            }
+        }
+        pooled.clear();
+        bytesPooled = 0;
+    }
+
+    private static int acquire(int target, int capacity) {
+        bytesInUse += capacity;
+        final List<Integer> ids = pooled.get(capacity);
+        if (ids != null && !ids.isEmpty()) {
+            bytesPooled -= capacity;
+            return ids.remove(ids.size() - 1);
+        }
+        final int id = ARBVertexBufferObject.glGenBuffersARB();
+        ARBVertexBufferObject.glBindBufferARB(target, id);
+        ARBVertexBufferObject.glBufferDataARB(target, capacity, ARBVertexBufferObject.GL_STATIC_DRAW_ARB);
+        ARBVertexBufferObject.glBindBufferARB(target, 0);
+        capacities.put(id, capacity);
+        return id;
+    }
+
+    /**
+     * @return the smallest power of two that's at least size and
+     *         MIN_CAPACITY
+     */
+    private static int getCapacity(int size) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < size) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    /**
+     * @return the total capacity of buffers handed out and not yet released,
+     *         i.e. the VRAM reserved for them
+     */
+    public static long getBytesInUse() {
+        return bytesInUse;
+    }
+
+    /**
+     * @return the total size of the data uploaded to buffers in use; the
+     *         rest of getBytesInUse is lost to rounding up capacities
+     */
+    public static long getBytesUsed() {
+        return bytesUsed;
+    }
+
+    /**
+     * @return the total capacity of released buffers waiting to be reused
+     */
+    public static long getBytesPooled() {
+        return bytesPooled;
+    }
+}
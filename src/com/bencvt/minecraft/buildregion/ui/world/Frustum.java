@@ -0,0 +1,93 @@
+package com.bencvt.minecraft.buildregion.ui.world;
+
+import java.nio.FloatBuffer;
+
+import libshapedraw.primitive.ReadonlyVector3;
+
+import org.lwjgl.BufferUtils;
+import org.lwjgl.opengl.GL11;
+
+/**
+ * The view frustum for the current frame, used to skip shapes and outline
+ * sections that are entirely off screen.
+ * <p>
+ * The six clipping planes are extracted from the combined projection and
+ * modelview matrices (the Gribb/Hartmann method), in whatever coordinates
+ * those matrices are applied to. Rather than assume which translations the
+ * modelview matrix has at some earlier point in the frame, update right
+ * before drawing, with the same matrices the shape's vertices are drawn
+ * with. Boxes are then tested in the shape's own coordinates, including any
+ * transforms applied to it.
+ * <p>
+ * Until the first update every box is considered visible. Must only be used
+ * from the render thread.
+ *
+ * @author bencvt
+ */
+public class Frustum {
+    private final FloatBuffer projection = BufferUtils.createFloatBuffer(16);
+    private final FloatBuffer modelview = BufferUtils.createFloatBuffer(16);
+    /** Column-major, same as OpenGL. */
+    private final double[] clip = new double[16];
+    /** a, b, c, d for each of the six planes; inside is positive. */
+    private final double[] planes = new double[6 * 4];
+    private boolean valid;
+
+    /**
+     * Read the current matrices. Call from the shape's render method, before
+     * testing any boxes.
+     */
+    public void update() {
+        projection.clear();
+        modelview.clear();
+        GL11.glGetFloat(GL11.GL_PROJECTION_MATRIX, projection);
+        GL11.glGetFloat(GL11.GL_MODELVIEW_MATRIX, modelview);
+        for (int col = 0; col < 4; col++) {
+            for (int row = 0; row < 4; row++) {
+                double sum = 0.0;
+                for (int k = 0; k < 4; k++) {
+                    sum += (double) projection.get(k*4 + row) * modelview.get(col*4 + k);
+                }
+                clip[col*4 + row] = sum;
+            }
+        }
+        // left/right, bottom/top, near/far
+        for (int row = 0; row < 3; row++) {
+            setPlane(row*2, row, 1.0);
+            setPlane(row*2 + 1, row, -1.0);
+        }
+        valid = true;
+    }
+
+    private void setPlane(int plane, int row, double sign) {
+        for (int col = 0; col < 4; col++) {
+            planes[plane*4 + col] = clip[col*4 + 3] + sign * clip[col*4 + row];
+        }
+    }
+
+    /**
+     * @return false if the box, in the coordinates the matrices were
+     *         applied to when last updated, is entirely outside
+     *         the frustum. May return true for some boxes that are just
+     *         outside a corner of the frustum.
+     */
+    public boolean isBoxVisible(double x0, double y0, double z0, double x1, double y1, double z1) {
+        if (!valid) {
+            return true;
+        }
+        for (int i = 0; i < planes.length; i += 4) {
+            // Test the corner farthest along the plane's normal.
+            final double a = planes[i];
+            final double b = planes[i + 1];
+            final double c = planes[i + 2];
+            if (a * (a >= 0.0 ? x1 : x0) + b * (b >= 0.0 ? y1 : y0) + c * (c >= 0.0 ? z1 : z0) + planes[i + 3] < 0.0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public boolean isBoxVisible(ReadonlyVector3 lower, ReadonlyVector3 upper) {
+        return isBoxVisible(lower.getX(), lower.getY(), lower.getZ(), upper.getX(), upper.getY(), upper.getZ());
+    }
+}
@@ -0,0 +1,96 @@
+package com.bencvt.minecraft.buildregion.ui.world;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.bencvt.minecraft.buildregion.region.RegionBase;
+
+/**
+ * Least recently used cache of finished outlines, keyed by the region's shape
+ * but not its position. Moving a region, undoing back to a previous size, or
+ * switching back to a previous region type will find the outline here rather
+ * than rebuilding it.
+ * <p>
+ * Only the sections' vertices are cached. Their VBOs belong to whichever
+ * RenderVertexBuffer is displaying them and are re-uploaded as needed.
+ * <p>
+ * Only call from the render thread.
+ *
+ * @author bencvt
+ */
+class MeshCache {
+    /** Least recently used outlines are dropped beyond this many bytes. */
+    public static final long MAX_BYTES = 32L << 20;
+
+    private static final LinkedHashMap<RegionBase.ShapeKey, SectionMesh> meshes =
+            new LinkedHashMap<RegionBase.ShapeKey, SectionMesh>(16, 0.75f, true);
+    /**
+     * The size of each outline when cached. Coarse levels of detail built
+     * afterwards aren't counted, so the total stays consistent.
+     */
+    private static final Map<RegionBase.ShapeKey, Long> meshBytes = new HashMap<RegionBase.ShapeKey, Long>();
+    private static long bytes;
+
+    /**
+     * @return the cached outline, or null if none
+     */
+    public static SectionMesh get(RegionBase.ShapeKey key) {
+        if (key == null) {
+            return null;
+        }
+        return meshes.get(key);
+    }
+
+    /**
+     * Cache an outline, evicting the least recently used ones as needed. An
+     * outline larger than the cache on its own is not cached at all.
+     */
+    public static void put(RegionBase.ShapeKey key, SectionMesh mesh) {
+        if (key == null) {
+            return;
+        }
+        remove(key);
+        final long size = mesh.getByteCount();
+        if (size > MAX_BYTES) {
+            return;
+        }
+        meshes.put(key, mesh);
+        meshBytes.put(key, size);
+        bytes += size;
+        trim();
+    }
+
+    public static void clear() {
+        meshes.clear();
+        meshBytes.clear();
+        bytes = 0;
+    }
+
+    private static void remove(RegionBase.ShapeKey key) {
+        if (meshes.remove(key) != null) {
+            bytes -= meshBytes.remove(key);
+        }
+    }
+
+    private static void trim() {
+        Iterator<Map.Entry<RegionBase.ShapeKey, SectionMesh>> it = meshes.entrySet().iterator();
+        while (bytes > MAX_BYTES && it.hasNext()) {
+            bytes -= meshBytes.remove(it.next().getKey());
+            it.remove();
+        }
+    }
+
+    /**
+     * @return the approximate memory used by cached outlines. Sections
+     *         shared by several outlines are counted once per outline.
+     */
+    public static long getBytes() {
+        return bytes;
+    }
+
+    public static int getMeshCount() {
+        return meshes.size();
+    }
+}
@@ -0,0 +1,125 @@
+package com.bencvt.minecraft.buildregion.ui.world;
+
+import libshapedraw.primitive.Axis;
+import libshapedraw.primitive.ReadonlyVector3;
+import libshapedraw.primitive.Vector3;
+
+import com.bencvt.minecraft.buildregion.region.RegionBase;
+import com.bencvt.minecraft.buildregion.region.RegionType;
+import com.bencvt.minecraft.buildregion.region.Units;
+
+/**
+ * A low resolution view of another region, used to build coarse outlines.
+ * Each block of this region is a cell of step x step x step blocks of the
+ * source region, and is inside if the block at the cell's center is. Cell
+ * (0,0,0) starts at the source block specified by the grid offset.
+ * <p>
+ * Read-only: the region can't be moved or expanded.
+ *
+ * @author bencvt
+ */
+class RegionSampled extends RegionBase {
+    private final RegionBase source;
+    private final int step;
+    private final int half;
+    private final int gridX;
+    private final int gridY;
+    private final int gridZ;
+
+    public RegionSampled(RegionBase source, int step) {
+        this(source, step, 0, 0, 0);
+    }
+
+    public RegionSampled(RegionBase source, int step, int gridX, int gridY, int gridZ) {
+        super(source.getOriginReadonly().copy().subtract(new Vector3(gridX, gridY, gridZ)).scale(1.0 / step),
+                source.getAxis());
+        this.source = source;
+        this.step = step;
+        half = step / 2;
+        this.gridX = gridX;
+        this.gridY = gridY;
+        this.gridZ = gridZ;
+    }
+
+    @Override
+    public RegionType getRegionType() {
+        return source.getRegionType();
+    }
+
+    @Override
+    public RegionBase copyUsing(ReadonlyVector3 newOrigin, Axis newAxis) {
+        return new RegionSampled(source.copyUsing(newOrigin.copy().scale(step).add(gridX, gridY, gridZ), newAxis),
+                step, gridX, gridY, gridZ);
+    }
+
+    @Override
+    protected void onOriginUpdate() {
+        // do nothing
+    }
+
+    @Override
+    public boolean isInsideRegion(double x, double y, double z) {
+        return source.isInsideRegion(x*step + gridX + half, y*step + gridY + half, z*step + gridZ + half);
+    }
+
+    @Override
+    public boolean isInsideBlock(int x, int y, int z) {
+        return source.isInsideBlock(x*step + gridX + half, y*step + gridY + half, z*step + gridZ + half);
+    }
+
+    @Override
+    public double getSize() {
+        return source.getSize() / ((double) step * step * step);
+    }
+
+    @Override
+    public boolean getAABB(Vector3 lower, Vector3 upper) {
+        if (!source.getAABB(lower, upper)) {
+            return false;
+        }
+        final Vector3 grid = new Vector3(gridX, gridY, gridZ);
+        Units.WHOLE.clamp(lower.subtract(grid).scale(1.0 / step));
+        Units.WHOLE.clamp(upper.subtract(grid).scale(1.0 / step));
+        return true;
+    }
+
+    /**
+     * Which source blocks end up sampled depends on where the source sits
+     * relative to the cells, so that's part of the key along with the step.
+     */
+    @Override
+    public ShapeKey getShapeKey() {
+        final ShapeKey sourceKey = source.getShapeKey();
+        if (sourceKey == null) {
+            return null;
+        }
+        final ReadonlyVector3 sourceOrigin = source.getOriginReadonly();
+        return createShapeKey(sourceKey, step,
+                getCellOffset(sourceOrigin.getX(), gridX),
+                getCellOffset(sourceOrigin.getY(), gridY),
+                getCellOffset(sourceOrigin.getZ(), gridZ));
+    }
+
+    /**
+     * @return the source coordinate's block offset within its cell
+     */
+    private int getCellOffset(double coord, int grid) {
+        final int offset = ((int) Math.floor(coord) - grid) % step;
+        return offset < 0 ? offset + step : offset;
+    }
+
+    @Override
+    public Units getUnits(Axis axis) {
+        return Units.WHOLE;
+    }
+
+    @Override
+    public boolean expand(Axis axis, double amount) {
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return source.toString();
+    }
+}
@@ -67,6 +67,9 @@ public abstract class RenderBase extends Shape {
     private Timeline timelineShiftOrigin;
     private Timeline timelineFade;
     protected boolean renderMarkers;
+    private Frustum frustum;
+    private final Vector3 renderLower;
+    private final Vector3 renderUpper;
 
     protected RenderBase(ReadonlyColor lineColorVisible, ReadonlyColor lineColorHidden) {
         super(Vector3.ZEROS.copy()); // child class responsible for setting origin
@@ -82,10 +85,13 @@ public abstract class RenderBase extends Shape {
         addTransform(shapeScale);
         actualOrigin = getOriginReadonly().copy();
         renderMarkers = true;
+        renderLower = new Vector3();
+        renderUpper = new Vector3();
     }
 
     /**
-     * Clean up any external resources owned by this Shape (e.g. OpenGL VBOs).
+     * Clean up any external resources owned by this Shape (e.g. OpenGL VBOs,
+     * which are returned to the BufferPool for reuse).
      * Called whenever this Shape is removed.
      */
     public void cleanup() {
@@ -119,6 +125,15 @@ public abstract class RenderBase extends Shape {
         if (alphaBase <= 0.0) {
             return;
         }
+        if (frustum != null) {
+            // LibShapeDraw has applied the camera and this shape's
+            // transforms by now, so the planes are in world coordinates,
+            // as scaled by shapeScale.
+            frustum.update();
+            if (getRenderBounds(renderLower, renderUpper) && !frustum.isBoxVisible(renderLower, renderUpper)) {
+                return;
+            }
+        }
         renderShell(mc);
         GL11.glLineWidth(LINE_WIDTH);
         GL11.glDepthFunc(GL11.GL_LEQUAL);
@@ -132,6 +147,29 @@ public abstract class RenderBase extends Shape {
         }
     }
 
+    /**
+     * Get a box, in world coordinates, containing everything this shape
+     * currently renders: shell, markers, and lines. Used to skip the shape
+     * when it's outside the view frustum. The child class should override
+     * this method if possible.
+     * 
+     * @return false if the bounds are unknown, in which case the shape is
+     *         always rendered
+     */
+    protected boolean getRenderBounds(Vector3 lower, Vector3 upper) {
+        return false;
+    }
+
+    /**
+     * @return the view frustum for the current frame, or null if not set
+     */
+    protected Frustum getFrustum() {
+        return frustum;
+    }
+    public void setFrustum(Frustum frustum) {
+        this.frustum = frustum;
+    }
+
     /**
      * If a shell surrounding the region is appropriate for the region type,
      * the child class can override this method.
@@ -279,6 +317,16 @@ public abstract class RenderBase extends Shape {
      */
     public abstract boolean updateIfPossible(RegionBase region, boolean animate);
 
+    /**
+     * Called by the ShapeManager once per frame, from the render thread.
+     * Child classes with deferred work that must be done on the render
+     * thread (e.g., uploading VBOs) should do some of it here, stopping once
+     * System.nanoTime() reaches the deadline.
+     */
+    public void runPendingWork(long deadline) {
+        // do nothing
+    }
+
     /**
      * Adjust to the player moving around. For large or infinite shapes, this
      * is the input to use to limit the number of lines rendered.
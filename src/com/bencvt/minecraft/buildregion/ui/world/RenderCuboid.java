@@ -18,23 +18,40 @@ import com.bencvt.minecraft.buildregion.region.RegionCuboid;
  * The cuboid is rendered as a translucent box. The edges are rendered as
  * thicker than normal lines. The sides are filled with block-sized grid lines,
  * unless the side is too long.
+ * <p>
+ * The geometry is assembled into a vertex buffer, so moving the cuboid
+ * without resizing it is just a translation. While the corners are animated,
+ * the mesh is built once at the target size and scaled to fit.
  * 
  * @author bencvt
  */
 public class RenderCuboid extends RenderBase {
     /** Somewhat arbitrary limit for the number of grid lines. */
-    public static final int MAX_GRID_SIZE = 100;
+    public static final int MAX_GRID_SIZE = 500;
+    private static final int SHELL_VERTEX_COUNT = 6*4;
+    private static final int BORDER_VERTEX_COUNT = 12*2;
 
     private final Vector3 lower;
     private final Vector3 upper;
     private Timeline timelineShiftCorners;
 
+    /** The size the corners are at, or are being animated towards. */
+    private final Vector3 targetSize;
+    /**
+     * The shell and grid, relative to the lower corner. Lazily built and
+     * only rebuilt when the target size changes.
+     */
+    private VertexStore mesh;
+    private final Vector3 meshSize;
+
     protected RenderCuboid(ReadonlyColor lineColorVisible, ReadonlyColor lineColorHidden, RegionCuboid region) {
         super(lineColorVisible, lineColorHidden);
         onUpdateOrigin(getOrigin().set(region.getOriginReadonly()));
         lower = new Vector3();
         upper = new Vector3();
         region.getAABB(lower, upper);
+        targetSize = upper.copy().subtract(lower);
+        meshSize = new Vector3();
     }
 
     @Override
@@ -43,135 +60,162 @@ public class RenderCuboid extends RenderBase {
     }
 
     @Override
-    protected void renderShell(MinecraftAccess mc) {
-        final double x0 = lower.getX() + CUBE_MARGIN;
-        final double x1 = upper.getX() + 1 - CUBE_MARGIN;
-        final double y0 = lower.getY() + CUBE_MARGIN;
-        final double y1 = upper.getY() + 1 - CUBE_MARGIN;
-        final double z0 = lower.getZ() + CUBE_MARGIN;
-        final double z1 = upper.getZ() + 1 - CUBE_MARGIN;
+    public void cleanup() {
+        if (mesh != null) {
+            mesh.removeVBO();
+        }
+    }
 
+    @Override
+    protected void renderShell(MinecraftAccess mc) {
+        updateMesh();
+        glApplyMeshTransform();
         GL11.glDisable(GL11.GL_CULL_FACE);
         getLineColorVisible().glApply(getAlphaBase() * ALPHA_SHELL);
-
-        // bottom
-        GL11.glBegin(GL11.GL_QUADS);
-        GL11.glVertex3d(x0, y0, z0);
-        GL11.glVertex3d(x0, y0, z1);
-        GL11.glVertex3d(x1, y0, z1);
-        GL11.glVertex3d(x1, y0, z0);
-        GL11.glEnd();
-
-        // top
-        GL11.glBegin(GL11.GL_QUADS);
-        GL11.glVertex3d(x0, y1, z0);
-        GL11.glVertex3d(x0, y1, z1);
-        GL11.glVertex3d(x1, y1, z1);
-        GL11.glVertex3d(x1, y1, z0);
-        GL11.glEnd();
-
-        // west
-        GL11.glBegin(GL11.GL_QUADS);
-        GL11.glVertex3d(x0, y0, z0);
-        GL11.glVertex3d(x0, y0, z1);
-        GL11.glVertex3d(x0, y1, z1);
-        GL11.glVertex3d(x0, y1, z0);
-        GL11.glEnd();
-
-        // east
-        GL11.glBegin(GL11.GL_QUADS);
-        GL11.glVertex3d(x1, y0, z0);
-        GL11.glVertex3d(x1, y0, z1);
-        GL11.glVertex3d(x1, y1, z1);
-        GL11.glVertex3d(x1, y1, z0);
-        GL11.glEnd();
-
-        // north
-        GL11.glBegin(GL11.GL_QUADS);
-        GL11.glVertex3d(x0, y0, z0);
-        GL11.glVertex3d(x0, y1, z0);
-        GL11.glVertex3d(x1, y1, z0);
-        GL11.glVertex3d(x1, y0, z0);
-        GL11.glEnd();
-
-        // south
-        GL11.glBegin(GL11.GL_QUADS);
-        GL11.glVertex3d(x0, y0, z1);
-        GL11.glVertex3d(x0, y1, z1);
-        GL11.glVertex3d(x1, y1, z1);
-        GL11.glVertex3d(x1, y0, z1);
-        GL11.glEnd();
-
+        mesh.render(mc, GL11.GL_QUADS, 0, SHELL_VERTEX_COUNT);
         GL11.glEnable(GL11.GL_CULL_FACE);
+        GL11.glPopMatrix();
     }
 
     @Override
     protected void renderLines(MinecraftAccess mc, ReadonlyColor lineColor) {
-        double x0 = lower.getX() + CUBE_MARGIN;
-        double x1 = upper.getX() + 1 - CUBE_MARGIN;
-        double y0 = lower.getY() + CUBE_MARGIN;
-        double y1 = upper.getY() + 1 - CUBE_MARGIN;
-        double z0 = lower.getZ() + CUBE_MARGIN;
-        double z1 = upper.getZ() + 1 - CUBE_MARGIN;
+        updateMesh();
+        glApplyMeshTransform();
 
         // border
         GL11.glLineWidth(LINE_WIDTH * 2.0F);
         lineColor.glApply(getAlphaBase());
-        renderBox(mc, x0, x1, y0, y1, z0, z1);
+        mesh.render(mc, GL11.GL_LINES, SHELL_VERTEX_COUNT, BORDER_VERTEX_COUNT);
 
         // grid lines
         GL11.glLineWidth(LINE_WIDTH);
         lineColor.glApply(getAlphaBase() * ALPHA_SIDE);
-        mc.startDrawing(GL11.GL_LINES);
-        double x0G = x0 + MINI_MARGIN;
-        double x1G = x1 - MINI_MARGIN;
-        double y0G = y0 + MINI_MARGIN;
-        double y1G = y1 - MINI_MARGIN;
-        double z0G = z0 + MINI_MARGIN;
-        double z1G = z1 - MINI_MARGIN;
+        final int gridStart = SHELL_VERTEX_COUNT + BORDER_VERTEX_COUNT;
+        mesh.render(mc, GL11.GL_LINES, gridStart, mesh.size() - gridStart);
+
+        GL11.glPopMatrix();
+    }
+
+    /**
+     * Rebuild the mesh if the cuboid's target size has changed. Shifting the
+     * cuboid without resizing it is handled by the translation alone.
+     * <p>
+     * The size may change every frame while the corners are being animated,
+     * but the target size only changes once per animation.
+     */
+    private void updateMesh() {
+        if (mesh == null || meshSize.getX() != targetSize.getX() ||
+                meshSize.getY() != targetSize.getY() || meshSize.getZ() != targetSize.getZ()) {
+            if (mesh == null) {
+                mesh = new VertexStore();
+            } else {
+                mesh.clear();
+            }
+            meshSize.set(targetSize);
+            buildMesh(meshSize.getX(), meshSize.getY(), meshSize.getZ());
+        }
+        mesh.createVBO();
+    }
+
+    /**
+     * Push a matrix that maps the mesh to the cuboid's current corners:
+     * translated to the lower corner and, mid-animation, scaled from the
+     * target size to the current size. Pop it when done.
+     */
+    private void glApplyMeshTransform() {
+        GL11.glPushMatrix();
+        GL11.glTranslated(lower.getX(), lower.getY(), lower.getZ());
+        final double scaleX = (upper.getX() - lower.getX() + 1.0) / (meshSize.getX() + 1.0);
+        final double scaleY = (upper.getY() - lower.getY() + 1.0) / (meshSize.getY() + 1.0);
+        final double scaleZ = (upper.getZ() - lower.getZ() + 1.0) / (meshSize.getZ() + 1.0);
+        if (scaleX != 1.0 || scaleY != 1.0 || scaleZ != 1.0) {
+            GL11.glScaled(scaleX, scaleY, scaleZ);
+        }
+    }
+
+    /**
+     * Assemble the shell quads, then the border lines, then the grid lines,
+     * relative to the lower corner.
+     */
+    private void buildMesh(double sizeX, double sizeY, double sizeZ) {
+        final double x0 = CUBE_MARGIN;
+        final double x1 = sizeX + 1 - CUBE_MARGIN;
+        final double y0 = CUBE_MARGIN;
+        final double y1 = sizeY + 1 - CUBE_MARGIN;
+        final double z0 = CUBE_MARGIN;
+        final double z1 = sizeZ + 1 - CUBE_MARGIN;
+
+        // shell: bottom, top, west, east, north, south
+        mesh.add(x0, y0, z0).add(x0, y0, z1).add(x1, y0, z1).add(x1, y0, z0);
+        mesh.add(x0, y1, z0).add(x0, y1, z1).add(x1, y1, z1).add(x1, y1, z0);
+        mesh.add(x0, y0, z0).add(x0, y0, z1).add(x0, y1, z1).add(x0, y1, z0);
+        mesh.add(x1, y0, z0).add(x1, y0, z1).add(x1, y1, z1).add(x1, y1, z0);
+        mesh.add(x0, y0, z0).add(x0, y1, z0).add(x1, y1, z0).add(x1, y0, z0);
+        mesh.add(x0, y0, z1).add(x0, y1, z1).add(x1, y1, z1).add(x1, y0, z1);
+
+        // border: same lines as renderBox
+        mesh.add(x0, y0, z0).add(x1, y0, z0).add(x1, y0, z0).add(x1, y0, z1);
+        mesh.add(x1, y0, z1).add(x0, y0, z1).add(x0, y0, z1).add(x0, y0, z0);
+        mesh.add(x0, y1, z0).add(x1, y1, z0).add(x1, y1, z0).add(x1, y1, z1);
+        mesh.add(x1, y1, z1).add(x0, y1, z1).add(x0, y1, z1).add(x0, y1, z0);
+        mesh.add(x0, y0, z0).add(x0, y1, z0);
+        mesh.add(x1, y0, z0).add(x1, y1, z0);
+        mesh.add(x1, y0, z1).add(x1, y1, z1);
+        mesh.add(x0, y0, z1).add(x0, y1, z1);
+
+        // grid lines
+        final double x0G = x0 + MINI_MARGIN;
+        final double x1G = x1 - MINI_MARGIN;
+        final double y0G = y0 + MINI_MARGIN;
+        final double y1G = y1 - MINI_MARGIN;
+        final double z0G = z0 + MINI_MARGIN;
+        final double z1G = z1 - MINI_MARGIN;
         if (y1 - y0 <= MAX_GRID_SIZE) {
             for (double yA = y0; yA < y1; yA += 1.0) {
-                mc.addVertex(x0G, yA, z0G).addVertex(x0G, yA, z1G);
-                mc.addVertex(x1G, yA, z0G).addVertex(x1G, yA, z1G);
-                mc.addVertex(x0G, yA, z0G).addVertex(x1G, yA, z0G);
-                mc.addVertex(x0G, yA, z1G).addVertex(x1G, yA, z1G);
+                addGridRingY(yA, x0G, x1G, z0G, z1G);
             }
             for (double yA = y1; yA > y0; yA -= 1.0) {
-                mc.addVertex(x0G, yA, z0G).addVertex(x0G, yA, z1G);
-                mc.addVertex(x1G, yA, z0G).addVertex(x1G, yA, z1G);
-                mc.addVertex(x0G, yA, z0G).addVertex(x1G, yA, z0G);
-                mc.addVertex(x0G, yA, z1G).addVertex(x1G, yA, z1G);
+                addGridRingY(yA, x0G, x1G, z0G, z1G);
             }
         }
         if (x1 - x0 <= MAX_GRID_SIZE) {
             for (double xA = x0; xA < x1; xA += 1.0) {
-                mc.addVertex(xA, y0G, z0G).addVertex(xA, y0G, z1G);
-                mc.addVertex(xA, y1G, z0G).addVertex(xA, y1G, z1G);
-                mc.addVertex(xA, y0G, z0G).addVertex(xA, y1G, z0G);
-                mc.addVertex(xA, y0G, z1G).addVertex(xA, y1G, z1G);
+                addGridRingX(xA, y0G, y1G, z0G, z1G);
             }
             for (double xA = x1; xA > x0; xA -= 1.0) {
-                mc.addVertex(xA, y0G, z0G).addVertex(xA, y0G, z1G);
-                mc.addVertex(xA, y1G, z0G).addVertex(xA, y1G, z1G);
-                mc.addVertex(xA, y0G, z0G).addVertex(xA, y1G, z0G);
-                mc.addVertex(xA, y0G, z1G).addVertex(xA, y1G, z1G);
+                addGridRingX(xA, y0G, y1G, z0G, z1G);
             }
         }
         if (z1 - z0 <= MAX_GRID_SIZE) {
             for (double zA = z0; zA < z1; zA += 1.0) {
-                mc.addVertex(x0G, y0G, zA).addVertex(x0G, y1G, zA);
-                mc.addVertex(x1G, y0G, zA).addVertex(x1G, y1G, zA);
-                mc.addVertex(x0G, y0G, zA).addVertex(x1G, y0G, zA);
-                mc.addVertex(x0G, y1G, zA).addVertex(x1G, y1G, zA);
+                addGridRingZ(zA, x0G, x1G, y0G, y1G);
             }
             for (double zA = z1; zA > z0; zA -= 1.0) {
-                mc.addVertex(x0G, y0G, zA).addVertex(x0G, y1G, zA);
-                mc.addVertex(x1G, y0G, zA).addVertex(x1G, y1G, zA);
-                mc.addVertex(x0G, y0G, zA).addVertex(x1G, y0G, zA);
-                mc.addVertex(x0G, y1G, zA).addVertex(x1G, y1G, zA);
+                addGridRingZ(zA, x0G, x1G, y0G, y1G);
             }
         }
-        mc.finishDrawing();
+        mesh.trimToSize();
+    }
+
+    private void addGridRingX(double xA, double y0G, double y1G, double z0G, double z1G) {
+        mesh.add(xA, y0G, z0G).add(xA, y0G, z1G);
+        mesh.add(xA, y1G, z0G).add(xA, y1G, z1G);
+        mesh.add(xA, y0G, z0G).add(xA, y1G, z0G);
+        mesh.add(xA, y0G, z1G).add(xA, y1G, z1G);
+    }
+
+    private void addGridRingY(double yA, double x0G, double x1G, double z0G, double z1G) {
+        mesh.add(x0G, yA, z0G).add(x0G, yA, z1G);
+        mesh.add(x1G, yA, z0G).add(x1G, yA, z1G);
+        mesh.add(x0G, yA, z0G).add(x1G, yA, z0G);
+        mesh.add(x0G, yA, z1G).add(x1G, yA, z1G);
+    }
+
+    private void addGridRingZ(double zA, double x0G, double x1G, double y0G, double y1G) {
+        mesh.add(x0G, y0G, zA).add(x0G, y1G, zA);
+        mesh.add(x1G, y0G, zA).add(x1G, y1G, zA);
+        mesh.add(x0G, y0G, zA).add(x1G, y0G, zA);
+        mesh.add(x0G, y1G, zA).add(x1G, y1G, zA);
     }
 
     @Override
@@ -183,6 +227,7 @@ public class RenderCuboid extends RenderBase {
             return false;
         }
         RegionCuboid cuboid = (RegionCuboid) region;
+        targetSize.set(cuboid.getUpperCornerReadonly()).subtract(cuboid.getLowerCornerReadonly());
         animateShiftOrigin(region.getOriginReadonly(), animate);
         if (timelineShiftCorners != null && !timelineShiftCorners.isDone()) {
             timelineShiftCorners.abort();
@@ -211,6 +256,14 @@ public class RenderCuboid extends RenderBase {
         return true;
     }
 
+    @Override
+    protected boolean getRenderBounds(Vector3 lower, Vector3 upper) {
+        // Corner markers stick out a little below the lower corner.
+        lower.set(this.lower).add(CORNER_MARKER_OFFSET, CORNER_MARKER_OFFSET, CORNER_MARKER_OFFSET);
+        upper.set(this.upper).add(1.0, 1.0, 1.0);
+        return true;
+    }
+
     @Override
     public void updateObserverPosition(ReadonlyVector3 observerPosition) {
         // do nothing
@@ -1,7 +1,5 @@
 package com.bencvt.minecraft.buildregion.ui.world;
 
-import java.util.List;
-
 import libshapedraw.MinecraftAccess;
 import libshapedraw.animation.trident.Timeline;
 import libshapedraw.primitive.Axis;
@@ -10,8 +8,6 @@ import libshapedraw.primitive.ReadonlyVector3;
 import libshapedraw.primitive.Vector3;
 
 import org.lwjgl.opengl.GL11;
-import org.lwjgl.util.glu.Cylinder;
-import org.lwjgl.util.glu.GLU;
 
 import com.bencvt.minecraft.buildregion.region.RegionBase;
 import com.bencvt.minecraft.buildregion.region.RegionCylinder;
@@ -28,23 +24,28 @@ import com.bencvt.minecraft.buildregion.region.RegionCylinder;
 public class RenderCylinder extends RenderVertexBuffer {
     private final Axis axis;
     private final Vector3 halfHeightAndRadii;
-    private final Cylinder shell;
     private Timeline timelineResize;
 
-    public RenderCylinder(ReadonlyColor lineColorVisible, ReadonlyColor lineColorHidden, RegionCylinder region) {
-        super(lineColorVisible, lineColorHidden, region);
+    public RenderCylinder(ReadonlyColor lineColorVisible, ReadonlyColor lineColorHidden, RegionCylinder region, int outlineStep) {
+        super(lineColorVisible, lineColorHidden, region, outlineStep);
         axis = region.getAxis();
         halfHeightAndRadii = region.getHalfHeightAndRadiiReadonly().copy();
-        shell = new Cylinder();
     }
-/*
+
     @Override
     protected void renderShell(MinecraftAccess mc) {
+        final double centerX = getOriginReadonly().getX() + 0.5;
+        final double centerY = getOriginReadonly().getY() + 0.5;
+        final double centerZ = getOriginReadonly().getZ() + 0.5;
+        final double radius = Math.max(
+                halfHeightAndRadii.getComponent(axis.next()),
+                halfHeightAndRadii.getComponent(axis.next().next()));
+        ShellMesh shell = ShellMesh.getCylinder(getShellDetail(radius, centerX, centerY, centerZ));
         GL11.glPushMatrix();
         GL11.glTranslated(
-                getOriginReadonly().getX() + 0.5 + axisOffset(Axis.X),
-                getOriginReadonly().getY() + 0.5 + axisOffset(Axis.Y),
-                getOriginReadonly().getZ() + 0.5 + axisOffset(Axis.Z));
+                centerX + axisOffset(Axis.X),
+                centerY + axisOffset(Axis.Y),
+                centerZ + axisOffset(Axis.Z));
         if (axis == Axis.X) {
             GL11.glRotatef(90.0F, 0.0F, 1.0F, 0.0F);
             GL11.glScaled(
@@ -66,15 +67,12 @@ public class RenderCylinder extends RenderVertexBuffer {
 
         GL11.glLineWidth(1.0F);
         getLineColorVisible().glApply(getAlphaBase());
-        shell.setDrawStyle(GLU.GLU_LINE);
-        shell.draw(1.0F, 1.0F, 1.0F, 24, 1);
+        shell.renderLines(mc);
         GL11.glLineWidth(LINE_WIDTH);
 
-        GL11.glDisable(GL11.GL_CULL_FACE);
         getLineColorVisible().glApply(getAlphaBase() * ALPHA_SHELL);
-        shell.setDrawStyle(GLU.GLU_FILL);
-        shell.draw(1.0F, 1.0F, 1.0F, 24, 1);
-        GL11.glEnable(GL11.GL_CULL_FACE);
+        shell.renderFill(mc, true);
+        shell.renderFill(mc, false);
 
         GL11.glPopMatrix();
     }
@@ -88,9 +86,15 @@ public class RenderCylinder extends RenderVertexBuffer {
         }
         return 0.0;
     }
-*/
 
-    /*
+    @Override
+    protected boolean getShellBounds(Vector3 lower, Vector3 upper) {
+        // Pad by a block to cover the markers.
+        lower.set(getOriginReadonly()).add(0.5, 0.5, 0.5).subtract(halfHeightAndRadii).add(-1.0, -1.0, -1.0);
+        upper.set(getOriginReadonly()).add(0.5, 0.5, 0.5).add(halfHeightAndRadii).add(1.0, 1.0, 1.0);
+        return true;
+    }
+
     @Override
     public boolean updateIfPossible(RegionBase region, boolean animate) {
         if (!region.isRegionType(RegionCylinder.class)) {
@@ -108,8 +112,9 @@ public class RenderCylinder extends RenderVertexBuffer {
             timelineResize.abort();
             timelineResize = null;
         }
-        if (!animate) {
+        if (!animate || halfHeightAndRadii.distanceSquared(cylinder.getHalfHeightAndRadiiReadonly()) == 0.0) {
             halfHeightAndRadii.set(cylinder.getHalfHeightAndRadiiReadonly());
+            populateVertexCache(cylinder);
             return true;
         }
         timelineResize = new Timeline(halfHeightAndRadii);
@@ -124,48 +129,8 @@ public class RenderCylinder extends RenderVertexBuffer {
                 cylinder.getHalfHeightAndRadiiReadonly().getZ());
         timelineResize.setDuration(ANIM_DURATION);
         timelineResize.play();
+        // Only the shell is interpolated; see RenderSphere.
+        populateVertexCacheAfter(cylinder, timelineResize);
         return true;
     }
-    */
-
-    // XXX: temporary
-    private void boxAt(List<Vector3> vertexCache, int x, int y, int z) {
-        double x0 = x + CUBE_MARGIN;
-        double x1 = x + 1 - CUBE_MARGIN;
-        double y0 = y + CUBE_MARGIN;
-        double y1 = y + 1 - CUBE_MARGIN;
-        double z0 = z + CUBE_MARGIN;
-        double z1 = z + 1 - CUBE_MARGIN;
-        vertexCache.add(new Vector3(x0, y0, z0));
-        vertexCache.add(new Vector3(x0, y0, z1));
-        vertexCache.add(new Vector3(x0, y1, z0));
-        vertexCache.add(new Vector3(x0, y1, z1));
-        vertexCache.add(new Vector3(x0, y0, z0));
-        vertexCache.add(new Vector3(x0, y1, z0));
-        vertexCache.add(new Vector3(x0, y0, z1));
-        vertexCache.add(new Vector3(x0, y1, z1));
-        vertexCache.add(new Vector3(x0, y0, z0));
-        vertexCache.add(new Vector3(x1, y0, z0));
-        vertexCache.add(new Vector3(x0, y0, z1));
-        vertexCache.add(new Vector3(x1, y0, z1));
-        vertexCache.add(new Vector3(x0, y1, z0));
-        vertexCache.add(new Vector3(x1, y1, z0));
-        vertexCache.add(new Vector3(x0, y1, z1));
-        vertexCache.add(new Vector3(x1, y1, z1));
-        vertexCache.add(new Vector3(x1, y0, z0));
-        vertexCache.add(new Vector3(x1, y0, z1));
-        vertexCache.add(new Vector3(x1, y1, z0));
-        vertexCache.add(new Vector3(x1, y1, z1));
-        vertexCache.add(new Vector3(x1, y0, z0));
-        vertexCache.add(new Vector3(x1, y1, z0));
-        vertexCache.add(new Vector3(x1, y0, z1));
-        vertexCache.add(new Vector3(x1, y1, z1));
-    }
-/*
-    @Override
-    protected void populateVertexCacheWork(List<Vector3> vertexCache, RegionBase region, int offX, int offY, int offZ, int sizeX, int sizeY, int sizeZ) {
-        RegionCylinder cylinder = (RegionCylinder) region;
-        // TODO
-    }
-*/
 }
@@ -18,6 +18,9 @@ import com.bencvt.minecraft.buildregion.region.RegionPlane;
  * The plane is rendered as an infinite 1-block-thick wireframe grid. Only a
  * few cells of the grid are rendered, clustered around the origin, which can
  * change. Cells further away from the origin are increasingly transparent.
+ * <p>
+ * The grid is assembled once into a vertex buffer, each vertex carrying its
+ * own transparency, and drawn with a single call per pass.
  * 
  * @author bencvt
  */
@@ -30,10 +33,11 @@ public class RenderPlane extends RenderBase {
     private final Axis axis;
     private final Vector3 observerPosition;
 
-    // Internal arrays used by renderLines, persisted to the instance so we
-    // don't keep pushing temporary objects to the heap every rendering frame.
-    private final double[] baseCoords = {0.0, 0.0, 0.0};
-    private final double[] curCoords = {0.0, 0.0, 0.0};
+    /**
+     * The grid cells, relative to the cell the observer is in. Lazily built;
+     * following the observer is just a translation.
+     */
+    private VertexStore grid;
 
     public RenderPlane(ReadonlyColor lineColorVisible, ReadonlyColor lineColorHidden, RegionPlane region) {
         super(lineColorVisible, lineColorHidden);
@@ -77,124 +81,133 @@ public class RenderPlane extends RenderBase {
         this.observerPosition.set(observerPosition);
     }
 
+    @Override
+    public void cleanup() {
+        if (grid != null) {
+            grid.removeVBO();
+        }
+    }
+
     @Override
     protected void renderLines(MinecraftAccess mc, ReadonlyColor lineColor) {
+        if (grid == null) {
+            buildGrid();
+        }
         double alphaLine = getAlphaBase();
 
-        curCoords[0] = baseCoords[0] = observerPosition.getX();
-        curCoords[1] = baseCoords[1] = observerPosition.getY();
-        curCoords[2] = baseCoords[2] = observerPosition.getZ();
+        double baseX = (int) observerPosition.getX();
+        double baseY = (int) observerPosition.getY();
+        double baseZ = (int) observerPosition.getZ();
+        if (axis == Axis.X) {
+            baseX = getOriginReadonly().getX();
+        } else if (axis == Axis.Y) {
+            baseY = getOriginReadonly().getY();
+        } else if (axis == Axis.Z) {
+            baseZ = getOriginReadonly().getZ();
+        } else {
+            throw new IllegalStateException();
+        }
+
+        GL11.glPushMatrix();
+        GL11.glTranslated(baseX, baseY, baseZ);
+        grid.render(mc, lineColor, alphaLine);
+        GL11.glPopMatrix();
+    }
+
+    /**
+     * Assemble the grid cells around (0,0,0) into a single vertex buffer.
+     * Each cell's faces use the cell's alpha scale and its sides a fraction
+     * of that.
+     */
+    private void buildGrid() {
+        grid = new VertexStore();
+        for (int off0 = -PLANE_RENDER_RADIUS; off0 <= PLANE_RENDER_RADIUS; off0++) {
+            for (int off1 = -PLANE_RENDER_RADIUS; off1 <= PLANE_RENDER_RADIUS; off1++) {
+                final double alphaScale = getAlphaScale(off0, off1);
+                if (alphaScale <= 0.0) {
+                    continue;
+                }
+                grid.setAlpha(alphaScale);
+                addCellLines(off0, off1, false);
+                grid.setAlpha(alphaScale * ALPHA_SIDE);
+                addCellLines(off0, off1, true);
+            }
+        }
+        grid.trimToSize();
+        grid.createVBO();
+    }
+
+    private void addCellLines(int off0, int off1, boolean sides) {
+        final double[] cur = {0.0, 0.0, 0.0};
         final int dim0;
         final int dim1;
         if (axis == Axis.X) {
-            curCoords[0] = baseCoords[0] = getOriginReadonly().getX();
             dim0 = 1;
             dim1 = 2;
         } else if (axis == Axis.Y) {
-            curCoords[1] = baseCoords[1] = getOriginReadonly().getY();
             dim0 = 0;
             dim1 = 2;
         } else if (axis == Axis.Z) {
-            curCoords[2] = baseCoords[2] = getOriginReadonly().getZ();
             dim0 = 0;
             dim1 = 1;
         } else {
             throw new IllegalStateException();
         }
-        baseCoords[dim0] = (int) baseCoords[dim0];
-        baseCoords[dim1] = (int) baseCoords[dim1];
-
-        for (int off0 = -PLANE_RENDER_RADIUS; off0 <= PLANE_RENDER_RADIUS; off0++) {
-            curCoords[dim0] = baseCoords[dim0] + off0;
-            for (int off1 = -PLANE_RENDER_RADIUS; off1 <= PLANE_RENDER_RADIUS; off1++) {
-                curCoords[dim1] = baseCoords[dim1] + off1;
-                final double alphaScale = alphaLine * getAlphaScale(off0, off1);
-                if (alphaScale <= 0.0) {
-                    continue;
-                }
-                final double x0 = curCoords[0] + CUBE_MARGIN;
-                final double x1 = curCoords[0] + 1 - CUBE_MARGIN;
-                final double y0 = curCoords[1] + CUBE_MARGIN;
-                final double y1 = curCoords[1] + 1 - CUBE_MARGIN;
-                final double z0 = curCoords[2] + CUBE_MARGIN;
-                final double z1 = curCoords[2] + 1 - CUBE_MARGIN;
-                lineColor.glApply(alphaScale);
-                // Because sides are rendered with a different transparency we
-                // need to check the axis again.
-                if (axis == Axis.X) {
-                    // west
-                    mc.startDrawing(GL11.GL_LINE_LOOP);
-                    mc.addVertex(x0, y0, z0);
-                    mc.addVertex(x0, y1, z0);
-                    mc.addVertex(x0, y1, z1);
-                    mc.addVertex(x0, y0, z1);
-                    mc.finishDrawing();
-                    // east
-                    mc.startDrawing(GL11.GL_LINE_LOOP);
-                    mc.addVertex(x1, y0, z0);
-                    mc.addVertex(x1, y1, z0);
-                    mc.addVertex(x1, y1, z1);
-                    mc.addVertex(x1, y0, z1);
-                    mc.finishDrawing();
-                    // sides
-                    lineColor.glApply(alphaScale * ALPHA_SIDE);
-                    mc.startDrawing(GL11.GL_LINES);
-                    mc.addVertex(x0, y0, z0).addVertex(x1, y0, z0);
-                    mc.addVertex(x0, y1, z0).addVertex(x1, y1, z0);
-                    mc.addVertex(x0, y1, z1).addVertex(x1, y1, z1);
-                    mc.addVertex(x0, y0, z1).addVertex(x1, y0, z1);
-                    mc.finishDrawing();
-                } else if (axis == Axis.Y) {
-                    // bottom
-                    mc.startDrawing(GL11.GL_LINE_LOOP);
-                    mc.addVertex(x0, y0, z0);
-                    mc.addVertex(x1, y0, z0);
-                    mc.addVertex(x1, y0, z1);
-                    mc.addVertex(x0, y0, z1);
-                    mc.finishDrawing();
-                    // top
-                    mc.startDrawing(GL11.GL_LINE_LOOP);
-                    mc.addVertex(x0, y1, z0);
-                    mc.addVertex(x1, y1, z0);
-                    mc.addVertex(x1, y1, z1);
-                    mc.addVertex(x0, y1, z1);
-                    mc.finishDrawing();
-                    // sides
-                    lineColor.glApply(alphaScale * ALPHA_SIDE);
-                    mc.startDrawing(GL11.GL_LINES);
-                    mc.addVertex(x0, y0, z0).addVertex(x0, y1, z0);
-                    mc.addVertex(x1, y0, z0).addVertex(x1, y1, z0);
-                    mc.addVertex(x1, y0, z1).addVertex(x1, y1, z1);
-                    mc.addVertex(x0, y0, z1).addVertex(x0, y1, z1);
-                    mc.finishDrawing();
-                } else if (axis == Axis.Z) {
-                    // north
-                    mc.startDrawing(GL11.GL_LINE_LOOP);
-                    mc.addVertex(x0, y0, z0);
-                    mc.addVertex(x1, y0, z0);
-                    mc.addVertex(x1, y1, z0);
-                    mc.addVertex(x0, y1, z0);
-                    mc.finishDrawing();
-                    // south
-                    mc.startDrawing(GL11.GL_LINE_LOOP);
-                    mc.addVertex(x0, y0, z1);
-                    mc.addVertex(x1, y0, z1);
-                    mc.addVertex(x1, y1, z1);
-                    mc.addVertex(x0, y1, z1);
-                    mc.finishDrawing();
-                    // sides
-                    lineColor.glApply(alphaScale * ALPHA_SIDE);
-                    mc.startDrawing(GL11.GL_LINES);
-                    mc.addVertex(x0, y0, z0).addVertex(x0, y0, z1);
-                    mc.addVertex(x1, y0, z0).addVertex(x1, y0, z1);
-                    mc.addVertex(x1, y1, z0).addVertex(x1, y1, z1);
-                    mc.addVertex(x0, y1, z0).addVertex(x0, y1, z1);
-                    mc.finishDrawing();
-                }
+        cur[dim0] = off0;
+        cur[dim1] = off1;
+        final double x0 = cur[0] + CUBE_MARGIN;
+        final double x1 = cur[0] + 1 - CUBE_MARGIN;
+        final double y0 = cur[1] + CUBE_MARGIN;
+        final double y1 = cur[1] + 1 - CUBE_MARGIN;
+        final double z0 = cur[2] + CUBE_MARGIN;
+        final double z1 = cur[2] + 1 - CUBE_MARGIN;
+        // Because sides are rendered with a different transparency we need to
+        // check the axis again.
+        if (axis == Axis.X) {
+            if (sides) {
+                grid.add(x0, y0, z0).add(x1, y0, z0);
+                grid.add(x0, y1, z0).add(x1, y1, z0);
+                grid.add(x0, y1, z1).add(x1, y1, z1);
+                grid.add(x0, y0, z1).add(x1, y0, z1);
+            } else {
+                addLoop(x0, y0, z0, x0, y1, z0, x0, y1, z1, x0, y0, z1); // west
+                addLoop(x1, y0, z0, x1, y1, z0, x1, y1, z1, x1, y0, z1); // east
+            }
+        } else if (axis == Axis.Y) {
+            if (sides) {
+                grid.add(x0, y0, z0).add(x0, y1, z0);
+                grid.add(x1, y0, z0).add(x1, y1, z0);
+                grid.add(x1, y0, z1).add(x1, y1, z1);
+                grid.add(x0, y0, z1).add(x0, y1, z1);
+            } else {
+                addLoop(x0, y0, z0, x1, y0, z0, x1, y0, z1, x0, y0, z1); // bottom
+                addLoop(x0, y1, z0, x1, y1, z0, x1, y1, z1, x0, y1, z1); // top
+            }
+        } else {
+            if (sides) {
+                grid.add(x0, y0, z0).add(x0, y0, z1);
+                grid.add(x1, y0, z0).add(x1, y0, z1);
+                grid.add(x1, y1, z0).add(x1, y1, z1);
+                grid.add(x0, y1, z0).add(x0, y1, z1);
+            } else {
+                addLoop(x0, y0, z0, x1, y0, z0, x1, y1, z0, x0, y1, z0); // north
+                addLoop(x0, y0, z1, x1, y0, z1, x1, y1, z1, x0, y1, z1); // south
             }
         }
     }
 
+    /** Equivalent to a GL_LINE_LOOP of four vertices. */
+    private void addLoop(
+            double ax, double ay, double az,
+            double bx, double by, double bz,
+            double cx, double cy, double cz,
+            double dx, double dy, double dz) {
+        grid.add(ax, ay, az).add(bx, by, bz);
+        grid.add(bx, by, bz).add(cx, cy, cz);
+        grid.add(cx, cy, cz).add(dx, dy, dz);
+        grid.add(dx, dy, dz).add(ax, ay, az);
+    }
+
     private static double getAlphaScale(int off0, int off1) {
         //return Math.max(0.0, (PLANE_RENDER_RADIUS + 1 - Math.sqrt(off0*off0 + off1*off1)) / (PLANE_RENDER_RADIUS + 1));
         if (alphaTable == null) {
@@ -0,0 +1,63 @@
+package com.bencvt.minecraft.buildregion.ui.world;
+
+import libshapedraw.primitive.Vector3;
+
+import com.bencvt.minecraft.buildregion.region.RegionBase;
+import com.bencvt.minecraft.buildregion.region.Units;
+
+/**
+ * Decide how much detail a region's block-aligned outline can afford, before
+ * anything is built. Huge regions (e.g. a 500 block radius sphere typed into
+ * GuiScreenDefineRegion) degrade gracefully: first to a coarse outline with
+ * one cell every few blocks, then to just the shell.
+ * <p>
+ * The cost is estimated from the region's AABB and size alone. The number of
+ * boundary blocks is roughly the AABB's surface area scaled by how much of
+ * the AABB the region fills; this is exact for cylinders and very close for
+ * spheres.
+ *
+ * @author bencvt
+ */
+public class RenderSizePolicy {
+    /** Outline step meaning no outline at all, only the shell. */
+    public static final int SHELL_ONLY = 0;
+    /** Outline step meaning every block is outlined. */
+    public static final int FULL = 1;
+    /** Outlines estimated to have more boundary blocks than this are coarsened. */
+    public static final long MAX_OUTLINE_BLOCKS = 1L << 18;
+    /** If the outline would need a coarser step than this, only draw the shell. */
+    public static final int MAX_STEP = 8;
+
+    /**
+     * @return the approximate number of boundary blocks in the region, or -1
+     *         if it's infinite
+     */
+    public long estimateBoundaryBlocks(RegionBase region) {
+        Vector3 lower = new Vector3();
+        Vector3 upper = new Vector3();
+        if (!region.getAABB(lower, upper)) {
+            return -1;
+        }
+        Units.WHOLE.clamp(lower);
+        Units.WHOLE.clamp(upper);
+        final double sizeX = upper.getX() - lower.getX() + 1.0;
+        final double sizeY = upper.getY() - lower.getY() + 1.0;
+        final double sizeZ = upper.getZ() - lower.getZ() + 1.0;
+        final double fill = Math.min(1.0, region.getSize() / (sizeX * sizeY * sizeZ));
+        return (long) (2.0 * (sizeX*sizeY + sizeY*sizeZ + sizeZ*sizeX) * fill);
+    }
+
+    /**
+     * @return FULL, SHELL_ONLY, or the number of blocks per cell of a coarse
+     *         outline. Coarsening by a step of n cuts the boundary blocks by
+     *         a factor of about n squared.
+     */
+    public int getOutlineStep(RegionBase region) {
+        final long blocks = estimateBoundaryBlocks(region);
+        if (blocks <= MAX_OUTLINE_BLOCKS) {
+            return FULL;
+        }
+        final int step = (int) Math.ceil(Math.sqrt((double) blocks / MAX_OUTLINE_BLOCKS));
+        return step <= MAX_STEP ? step : SHELL_ONLY;
+    }
+}
@@ -1,8 +1,5 @@
 package com.bencvt.minecraft.buildregion.ui.world;
 
-import java.util.Arrays;
-import java.util.List;
-
 import libshapedraw.MinecraftAccess;
 import libshapedraw.animation.trident.Timeline;
 import libshapedraw.primitive.ReadonlyColor;
@@ -10,8 +7,6 @@ import libshapedraw.primitive.ReadonlyVector3;
 import libshapedraw.primitive.Vector3;
 
 import org.lwjgl.opengl.GL11;
-import org.lwjgl.util.glu.GLU;
-import org.lwjgl.util.glu.Sphere;
 
 import com.bencvt.minecraft.buildregion.region.RegionBase;
 import com.bencvt.minecraft.buildregion.region.RegionSphere;
@@ -27,13 +22,11 @@ import com.bencvt.minecraft.buildregion.region.RegionSphere;
  */
 public class RenderSphere extends RenderVertexBuffer {
     private final Vector3 radii;
-    private final Sphere shell;
     private Timeline timelineResize;
 
-    public RenderSphere(ReadonlyColor lineColorVisible, ReadonlyColor lineColorHidden, RegionSphere region) {
-        super(lineColorVisible, lineColorHidden, region);
+    public RenderSphere(ReadonlyColor lineColorVisible, ReadonlyColor lineColorHidden, RegionSphere region, int outlineStep) {
+        super(lineColorVisible, lineColorHidden, region, outlineStep);
         radii = region.getRadiiReadonly().copy();
-        shell = new Sphere();
     }
 
     @Override
@@ -43,30 +36,37 @@ public class RenderSphere extends RenderVertexBuffer {
 
     @Override
     protected void renderShell(MinecraftAccess mc) {
+        final double centerX = getOriginReadonly().getX() + 0.5;
+        final double centerY = getOriginReadonly().getY() + 0.5;
+        final double centerZ = getOriginReadonly().getZ() + 0.5;
+        final double radius = Math.max(radii.getX(), Math.max(radii.getY(), radii.getZ()));
+        ShellMesh shell = ShellMesh.getSphere(getShellDetail(radius, centerX, centerY, centerZ));
+
         GL11.glPushMatrix();
-        GL11.glTranslated(
-                getOriginReadonly().getX() + 0.5,
-                getOriginReadonly().getY() + 0.5,
-                getOriginReadonly().getZ() + 0.5);
+        GL11.glTranslated(centerX, centerY, centerZ);
         GL11.glRotatef(90.0F, 1.0F, 0.0F, 0.0F);
         GL11.glScaled(radii.getX(), radii.getZ(), radii.getY());
 
         GL11.glLineWidth(1.0F);
         getLineColorVisible().glApply(getAlphaBase());
-        shell.setDrawStyle(GLU.GLU_LINE);
-        shell.draw(1.0F, 24, 24);
+        shell.renderLines(mc);
         GL11.glLineWidth(LINE_WIDTH);
 
         getLineColorVisible().glApply(getAlphaBase() * ALPHA_SHELL);
-        shell.setDrawStyle(GLU.GLU_FILL);
-        shell.setOrientation(GLU.GLU_INSIDE);
-        shell.draw(1.0F, 24, 24);
-        shell.setOrientation(GLU.GLU_OUTSIDE);
-        shell.draw(1.0F, 24, 24);
+        shell.renderFill(mc, true);
+        shell.renderFill(mc, false);
 
         GL11.glPopMatrix();
     }
 
+    @Override
+    protected boolean getShellBounds(Vector3 lower, Vector3 upper) {
+        // Pad by a block to cover the markers.
+        lower.set(getOriginReadonly()).add(0.5, 0.5, 0.5).subtract(radii).add(-1.0, -1.0, -1.0);
+        upper.set(getOriginReadonly()).add(0.5, 0.5, 0.5).add(radii).add(1.0, 1.0, 1.0);
+        return true;
+    }
+
     @Override
     public boolean updateIfPossible(RegionBase region, boolean animate) {
         if (!region.isRegionType(RegionSphere.class)) {
@@ -76,19 +76,16 @@ public class RenderSphere extends RenderVertexBuffer {
             return false;
         }
         RegionSphere sphere = (RegionSphere) region;
-        // TODO
-        //this.vertexOffset.animateStart(toTranslate, durationMs)
-        //  - getAABBLowerCornerReadonly()
-        //  - getAABBUpperCornerReadonly()
-        //  - populateVertexCache()
-        //  - vertexOffset.animateStart()
         animateShiftOrigin(sphere.getOriginReadonly(), animate);
         if (timelineResize != null && !timelineResize.isDone()) {
             timelineResize.abort();
             timelineResize = null;
         }
-        if (!animate) {
+        if (!animate || radii.distanceSquared(sphere.getRadiiReadonly()) == 0.0) {
             radii.set(sphere.getRadiiReadonly());
+            // The outline is rebuilt in the background (or found in the
+            // MeshCache); the old one stays visible until then.
+            populateVertexCache(sphere);
             return true;
         }
         timelineResize = new Timeline(radii);
@@ -97,13 +94,9 @@ public class RenderSphere extends RenderVertexBuffer {
         timelineResize.addPropertyToInterpolate("z", radii.getZ(), sphere.getRadiusZ());
         timelineResize.setDuration(ANIM_DURATION);
         timelineResize.play();
+        // Only the shell is interpolated. Rebuild the block-aligned outline
+        // just once, after the last resize in a row finishes.
+        populateVertexCacheAfter(sphere, timelineResize);
         return true;
     }
-
-    /*
-    @Override
-    protected void populateVertexCacheWork(List<Vector3> vertexCache, RegionBase region, int offX, int offY, int offZ, int sizeX, int sizeY, int sizeZ) {
-        // TODO
-    }
-    */
 }
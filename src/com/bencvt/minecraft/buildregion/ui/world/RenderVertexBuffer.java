@@ -1,21 +1,29 @@
 package com.bencvt.minecraft.buildregion.ui.world;
 
-import java.nio.FloatBuffer;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import libshapedraw.MinecraftAccess;
+import libshapedraw.animation.trident.Timeline;
+import libshapedraw.primitive.Axis;
 import libshapedraw.primitive.ReadonlyColor;
 import libshapedraw.primitive.ReadonlyVector3;
 import libshapedraw.primitive.Vector3;
 import libshapedraw.transform.ShapeTranslate;
 
-import org.lwjgl.BufferUtils;
-import org.lwjgl.opengl.ARBVertexBufferObject;
 import org.lwjgl.opengl.GL11;
-import org.lwjgl.opengl.GLContext;
 
 import com.bencvt.minecraft.buildregion.region.RegionBase;
+import com.bencvt.minecraft.buildregion.region.RegionBase.BoundaryVisitor;
 import com.bencvt.minecraft.buildregion.region.Units;
 
 /**
@@ -28,33 +36,110 @@ import com.bencvt.minecraft.buildregion.region.Units;
  * push the vertices to VRAM, significantly increasing performance as we don't
  * have to re-send the vertices to OpenGL every render frame.
  * <p>
+ * The vertices are split into 16x16x16 sections. Only sections whose
+ * contents changed are rebuilt and re-uploaded when the region is updated,
+ * and sections beyond the view distance from the observer or outside the view
+ * frustum aren't rendered.
+ * Distant sections are drawn at a lower level of detail; see VertexSection.
+ * Those levels are only built, a few sections at a time, once a section is
+ * far enough away to need them.
+ * <p>
+ * Finished outlines are kept in the MeshCache, keyed by the region's shape
+ * but not its position, so moving the region or returning to a previous
+ * shape doesn't require a rebuild at all.
+ * <p>
+ * Regions too large to outline block by block are given a coarser outline
+ * step, or none at all, by the ShapeManager's RenderSizePolicy.
+ * <p>
+ * The vertex cache is built on a background thread from a snapshot of the
+ * region. Once ready, its sections are uploaded on the render thread a few at
+ * a time (see runPendingWork), then swapped in. Until then the previous
+ * vertices (if any) continue to be rendered.
+ * <p>
  * TODO: make abstract and have RegionSphere and RegionCylinder derive from this class
  * TODO: move VBO optimization to LibShapeDraw eventually
  * 
  * @author bencvt
  */
 public /*abstract*/ class RenderVertexBuffer extends RenderBase {
-    /** The VBO handle. */
-    private int vboId;
+    /**
+     * Collinear line segments separated by at most this much are merged:
+     * enough to bridge the CUBE_MARGIN insets of two neighboring blocks.
+     */
+    public static final double MERGE_GAP = CUBE_MARGIN * 2.0 + MINI_MARGIN;
+    /** Sections farther than this many blocks from the observer are skipped. */
+    public static final double VIEW_DISTANCE = 256.0;
+    /** Sections farther than this many blocks away are drawn at LOD_COARSE. */
+    public static final double COARSE_DISTANCE = 64.0;
+    /** Sections farther than this many blocks away are drawn at LOD_SILHOUETTE. */
+    public static final double SILHOUETTE_DISTANCE = 160.0;
+    /**
+     * A section has to be this many blocks past a level's threshold before
+     * switching, so sections near a threshold don't flicker between levels.
+     */
+    public static final double LOD_HYSTERESIS = 8.0;
+
+    /** Shared by all instances; lazily started. */
+    private static ExecutorService builderThread;
+
+    /** The outline currently rendered. */
+    private SectionMesh mesh;
+    /** The level of detail of each of the mesh's placements. */
+    private int[] placementLevels;
+    /** True if some placement's level of detail hasn't been built yet. */
+    private boolean levelsPending;
+    /** The extent of the mesh's placements, in outline cells. */
+    private final Vector3 meshSize;
+
+    /** The in-flight build, if any, to be uploaded when done. */
+    private Future<VertexCacheBuild> pendingBuild;
 
-    /** Also maintain a regular buffer in case the client doesn't support VBOs. */
-    private final List<Vector3> vertexCache;
+    /** The outline being uploaded, if any, to be swapped in when done. */
+    private SectionMesh nextMesh;
+    private ReadonlyVector3 nextCorner;
+    private Iterator<VertexSection> nextUploads;
+
+    /** A snapshot to build once deferredUntil is done, if any. */
+    private RegionBase deferredRegion;
+    private Timeline deferredUntil;
 
     /** To support animation, all vertices are relative to the lower corner of the AABB. */
     protected final ShapeTranslate vertexOffset;
 
-    protected RenderVertexBuffer(ReadonlyColor lineColorVisible, ReadonlyColor lineColorHidden, RegionBase region) {
+    /**
+     * Blocks per outline cell: RenderSizePolicy.FULL, SHELL_ONLY, or the
+     * step of a coarse outline built from a RegionSampled.
+     */
+    private final int outlineStep;
+
+    private final Vector3 observerPosition;
+    private boolean observerPositionKnown;
+    /** The observer position relative to vertexOffset, in outline cells. */
+    private final Vector3 cullPosition;
+
+    protected RenderVertexBuffer(ReadonlyColor lineColorVisible, ReadonlyColor lineColorHidden, RegionBase region, int outlineStep) {
         super(lineColorVisible, lineColorHidden);
         onUpdateOrigin(getOrigin().set(region.getOriginReadonly()));
-        vertexCache = new ArrayList<Vector3>();
+        mesh = new SectionMesh();
+        placementLevels = new int[0];
+        meshSize = new Vector3();
         vertexOffset = new ShapeTranslate();
+        this.outlineStep = outlineStep;
+        observerPosition = new Vector3();
+        cullPosition = new Vector3();
         populateVertexCache(region);
     }
 
     @Override
     public void cleanup() {
-        removeVBO();
-        // No need to clear vertexCache; it's in local memory and will be GC'd.
+        cancelPendingBuild();
+        deferredRegion = null;
+        deferredUntil = null;
+        for (VertexSection section : mesh.sections.values()) {
+            section.removeVBO();
+        }
+        // No need to clear the sections; they're in local memory and will
+        // either be GC'd or kept by the MeshCache.
     }
 
     @Override
@@ -67,23 +152,160 @@ public /*abstract*/ class RenderVertexBuffer extends RenderBase {
         GL11.glPushMatrix();
         vertexOffset.preRender();
         lineColor.glApply(getAlphaBase() * 0.5);
-        if (vboId == 0) {
-            mc.startDrawing(GL11.GL_LINES);
-            for (Vector3 vertex : vertexCache) {
-                mc.addVertex(vertex);
+        final double scale = getOutlineScale();
+        if (scale != 1.0) {
+            GL11.glScaled(scale, scale, scale);
+        }
+        updateCullPosition();
+        final double maxDistSq = VIEW_DISTANCE * VIEW_DISTANCE / (scale * scale);
+        final Frustum frustum = getFrustum();
+        final ReadonlyVector3 corner = vertexOffset.getTranslateXYZ();
+        final double sectionSize = VertexSection.SIZE * scale;
+        for (int i = 0; i < placementLevels.length; i++) {
+            final SectionMesh.Placement placement = mesh.placements.get(i);
+            if (observerPositionKnown && placement.distanceSquared(Vector3.ZEROS, cullPosition) > maxDistSq) {
+                continue;
+            }
+            if (frustum != null) {
+                final double x0 = corner.getX() + placement.x * scale;
+                final double y0 = corner.getY() + placement.y * scale;
+                final double z0 = corner.getZ() + placement.z * scale;
+                if (!frustum.isBoxVisible(x0, y0, z0, x0 + sectionSize, y0 + sectionSize, z0 + sectionSize)) {
+                    continue;
+                }
+            }
+            // Until the placement's level is built, fall back to full detail.
+            final int level = placement.section.hasLevel(placementLevels[i]) ?
+                    placementLevels[i] : VertexSection.LOD_FULL;
+            final VertexStore vertexCache = placement.section.getVertexCache(level);
+            if (vertexCache.isEmpty()) {
+                continue;
             }
-            mc.finishDrawing();
-        } else {
-            ARBVertexBufferObject.glBindBufferARB(ARBVertexBufferObject.GL_ARRAY_BUFFER_ARB, vboId);
-            GL11.glEnableClientState(GL11.GL_VERTEX_ARRAY);
-            GL11.glVertexPointer(3, GL11.GL_FLOAT, 0, 0);
-            GL11.glDrawArrays(GL11.GL_LINES, 0, vertexCache.size());
-            GL11.glDisableClientState(GL11.GL_VERTEX_ARRAY);
-            ARBVertexBufferObject.glBindBufferARB(ARBVertexBufferObject.GL_ARRAY_BUFFER_ARB, 0);
+            // Sections can be shared with another instance via the
+            // MeshCache, which may have removed the VBO. Re-upload if so.
+            vertexCache.createVBO();
+            GL11.glPushMatrix();
+            GL11.glTranslated(placement.x, placement.y, placement.z);
+            if (level != VertexSection.LOD_FULL) {
+                GL11.glScaled(VertexSection.LOD_STEP, VertexSection.LOD_STEP, VertexSection.LOD_STEP);
+            }
+            vertexCache.render(mc);
+            GL11.glPopMatrix();
         }
         GL11.glPopMatrix();
     }
 
+    /**
+     * The union of the shell's bounds, if any, and the outline's.
+     */
+    @Override
+    protected boolean getRenderBounds(Vector3 lower, Vector3 upper) {
+        final boolean outline = !mesh.placements.isEmpty();
+        final ReadonlyVector3 corner = vertexOffset.getTranslateXYZ();
+        if (!getShellBounds(lower, upper)) {
+            if (!outline) {
+                return false;
+            }
+            lower.set(corner);
+            upper.set(corner);
+        }
+        if (outline) {
+            final double scale = getOutlineScale();
+            lower.setMinimum(lower, corner);
+            upper.set(
+                    Math.max(upper.getX(), corner.getX() + meshSize.getX() * scale),
+                    Math.max(upper.getY(), corner.getY() + meshSize.getY() * scale),
+                    Math.max(upper.getZ(), corner.getZ() + meshSize.getZ() * scale));
+        }
+        return true;
+    }
+
+    /**
+     * Child classes rendering a shell should override this method.
+     * @see #getRenderBounds(Vector3, Vector3)
+     * @return false if there's no shell
+     */
+    protected boolean getShellBounds(Vector3 lower, Vector3 upper) {
+        return false;
+    }
+
+    /**
+     * Start any deferred build that's due, then upload the finished build's
+     * sections until the deadline, swapping in the new outline once every
+     * section is uploaded. At least one section is uploaded per call.
+     * <p>
+     * Once the current outline is swapped in, build any levels of detail it
+     * needs in the remaining time.
+     */
+    @Override
+    public void runPendingWork(long deadline) {
+        if (deferredRegion != null && deferredUntil.isDone()) {
+            populateVertexCache(deferredRegion);
+        }
+        takeBuildIfReady();
+        if (nextMesh != null) {
+            while (nextUploads.hasNext()) {
+                nextUploads.next().createVBO();
+                if (nextUploads.hasNext() && System.nanoTime() >= deadline) {
+                    return;
+                }
+            }
+            swap(nextMesh, nextCorner);
+            nextMesh = null;
+            nextCorner = null;
+            nextUploads = null;
+        }
+        buildPendingLevels(deadline);
+    }
+
+    /**
+     * Build and upload the levels of detail chosen by placementLevels that
+     * haven't been built yet, until the deadline. At least one section is
+     * built per call.
+     */
+    private void buildPendingLevels(long deadline) {
+        if (!levelsPending) {
+            return;
+        }
+        boolean built = false;
+        for (int i = 0; i < placementLevels.length; i++) {
+            final VertexSection section = mesh.placements.get(i).section;
+            if (section.hasLevel(placementLevels[i])) {
+                continue;
+            }
+            if (built && System.nanoTime() >= deadline) {
+                return;
+            }
+            buildCoarseLevels(section);
+            section.createVBO();
+            built = true;
+        }
+        levelsPending = false;
+    }
+
+    /**
+     * Build a section's coarse levels of detail. Cheap compared to the full
+     * level, as there are LOD_STEP^3 times fewer cells than blocks.
+     */
+    private void buildCoarseLevels(VertexSection section) {
+        final int cells = VertexSection.SIZE / VertexSection.LOD_STEP;
+        VertexStore coarse = new VertexStore();
+        VertexStore silhouette = new VertexStore();
+        populateVertexCacheWork(coarse, silhouette, section.getLodRegion(),
+                section.getLodCellX(), section.getLodCellY(), section.getLodCellZ(),
+                cells, cells, cells);
+        finishVertexCache(coarse);
+        finishVertexCache(silhouette);
+        section.setCoarseLevels(coarse, silhouette);
+    }
+
+    private static void finishVertexCache(VertexStore vertexCache) {
+        mergeCollinearLines(vertexCache);
+        if (!vertexCache.index(CUBE_MARGIN)) {
+            vertexCache.trimToSize();
+        }
+    }
+
     @Override
     public boolean updateIfPossible(RegionBase region, boolean animate) {
         // No animation supported in this base class as we can't guarantee that
@@ -93,169 +315,548 @@ public /*abstract*/ class RenderVertexBuffer extends RenderBase {
         // Derived classes should (depending on the region type) be able to
         // guarantee this and thus support animation. Re-override this method.
         // The following helper methods may be relevant:
-        //  - getAABBLowerCornerReadonly()
-        //  - getAABBUpperCornerReadonly()
         //  - populateVertexCache()
+        //  - populateVertexCacheAfter()
         //  - vertexOffset.animateStart()
         return false;
     }
 
     @Override
     public void updateObserverPosition(ReadonlyVector3 observerPosition) {
-        // TODO: maybe implement a "chunk" system to cache a section of vertices, based on player position.
+        this.observerPosition.set(observerPosition);
+        observerPositionKnown = true;
+        updatePlacementLevels(false);
     }
 
+    /**
+     * Set cullPosition to the observer's position relative to vertexOffset,
+     * in outline cells.
+     */
+    private void updateCullPosition() {
+        if (observerPositionKnown) {
+            cullPosition.set(observerPosition).subtract(vertexOffset.getTranslateXYZ()).scale(1.0 / getOutlineScale());
+        }
+    }
+
+    /**
+     * Choose the level of detail of each placement based on its distance
+     * from the observer.
+     *
+     * @param reset if true ignore the current levels, e.g. for a new mesh
+     */
+    private void updatePlacementLevels(boolean reset) {
+        if (!observerPositionKnown) {
+            return;
+        }
+        updateCullPosition();
+        final double scale = getOutlineScale();
+        for (int i = 0; i < placementLevels.length; i++) {
+            final SectionMesh.Placement placement = mesh.placements.get(i);
+            final double distance = Math.sqrt(placement.distanceSquared(Vector3.ZEROS, cullPosition)) * scale;
+            placementLevels[i] = reset ?
+                    getLevel(VertexSection.LOD_FULL, distance, 0.0) :
+                    getLevel(placementLevels[i], distance, LOD_HYSTERESIS);
+            if (!placement.section.hasLevel(placementLevels[i])) {
+                levelsPending = true;
+            }
+        }
+    }
+
+    /**
+     * @return the level of detail for a section the specified number of
+     *         blocks away, changing from the current level only if the
+     *         distance is past the threshold by more than hysteresis
+     */
+    private static int getLevel(int level, double distance, double hysteresis) {
+        while (level < VertexSection.LOD_SILHOUETTE && distance > getLevelDistance(level + 1) + hysteresis) {
+            level++;
+        }
+        while (level > VertexSection.LOD_FULL && distance < getLevelDistance(level) - hysteresis) {
+            level--;
+        }
+        return level;
+    }
+
+    /**
+     * @return the distance beyond which the level of detail is used
+     */
+    private static double getLevelDistance(int level) {
+        if (level == VertexSection.LOD_COARSE) {
+            return COARSE_DISTANCE;
+        } else if (level == VertexSection.LOD_SILHOUETTE) {
+            return SILHOUETTE_DISTANCE;
+        }
+        return 0.0;
+    }
+
+    /**
+     * @return the last observer position, or null if it isn't known yet
+     */
+    protected ReadonlyVector3 getObserverPositionReadonly() {
+        return observerPositionKnown ? observerPosition : null;
+    }
+
+    /**
+     * @return the level of detail to use for a ShellMesh, based on the
+     *         observer's distance from the shell's center
+     */
+    protected int getShellDetail(double radius, double centerX, double centerY, double centerZ) {
+        if (!observerPositionKnown) {
+            return ShellMesh.MAX_DETAIL;
+        }
+        return ShellMesh.getDetail(radius, Math.sqrt(
+                Math.pow(observerPosition.getX() - centerX, 2.0) +
+                Math.pow(observerPosition.getY() - centerY, 2.0) +
+                Math.pow(observerPosition.getZ() - centerZ, 2.0)));
+    }
+
+    /**
+     * Same as populateVertexCache, but don't start until the timeline is
+     * done, e.g. an animated resize. The current outline stays visible in
+     * the meantime. Each call replaces the previously deferred region, so a
+     * burst of updates results in a single build.
+     */
+    protected void populateVertexCacheAfter(RegionBase region, Timeline timeline) {
+        cancelPendingBuild();
+        deferredRegion = region.copyUsing(region.getOriginReadonly(), region.getAxis());
+        deferredUntil = timeline;
+    }
+
+    /**
+     * Start building a new vertex cache for the region on the background
+     * thread, cancelling any build already in progress. The region is
+     * copied, so the caller is free to keep modifying it. Sections with the
+     * same contents as a current section are reused rather than rebuilt.
+     * <p>
+     * If the MeshCache already has an outline for the region's shape, it's
+     * uploaded right away instead. Must be called from the render thread.
+     */
     protected void populateVertexCache(RegionBase region) {
-        removeVBO();
-        vertexCache.clear();
+        cancelPendingBuild();
+        deferredRegion = null;
+        deferredUntil = null;
+        if (outlineStep == RenderSizePolicy.SHELL_ONLY) {
+            Vector3 aabbUpper = new Vector3();
+            region.getAABB(vertexOffset.getTranslateXYZ(), aabbUpper);
+            Units.WHOLE.clamp(vertexOffset.getTranslateXYZ());
+            return;
+        }
+        if (outlineStep != RenderSizePolicy.FULL) {
+            region = new RegionSampled(region.copyUsing(region.getOriginReadonly(), region.getAxis()), outlineStep);
+        }
 
-        Vector3 aabbLower = vertexOffset.getTranslateXYZ();
+        Vector3 aabbLower = new Vector3();
         Vector3 aabbUpper = new Vector3();
         region.getAABB(aabbLower, aabbUpper);
         Units.WHOLE.clamp(aabbLower);
         Units.WHOLE.clamp(aabbUpper);
 
-        int offX = (int) aabbLower.getX();
-        int offY = (int) aabbLower.getY();
-        int offZ = (int) aabbLower.getZ();
-        int sizeX = (int) aabbUpper.getX() - offX + 1;
-        int sizeY = (int) aabbUpper.getY() - offY + 1;
-        int sizeZ = (int) aabbUpper.getZ() - offZ + 1;
+        final RegionBase.ShapeKey shapeKey = region.getShapeKey();
+        final SectionMesh cached = MeshCache.get(shapeKey);
+        if (cached != null) {
+            startUpload(cached, aabbLower);
+            return;
+        }
+        if (mesh.placements.isEmpty()) {
+            // Nothing to keep rendering in the meantime, so move the corner
+            // into place right away.
+            setCorner(aabbLower);
+        }
 
-        populateVertexCacheWork(vertexCache, region, offX, offY, offZ, sizeX, sizeY, sizeZ);
-        createVBO();
+        RegionBase snapshot = region.copyUsing(region.getOriginReadonly(), region.getAxis());
+        pendingBuild = getBuilderThread().submit(new VertexCacheBuild(snapshot, shapeKey, aabbLower, aabbUpper,
+                new HashMap<VertexSection.Signature, VertexSection>(mesh.sections)));
     }
 
     /**
-     * Loop through every block in the AABB, calling region.isInsideRegion at
-     * least once for each. For interior blocks bordering an exterior block,
-     * add the appropriate vertices to the cache.
-     * <p>
-     * Derived classes should override this method to use a more intelligent
-     * algorithm if possible, tailored to the derived class's target region
-     * type. E.g., Bresenham's circle algorithm.
-     * <p>
-     * TODO: Enforce a size limit. Looping over millions of blocks in the main
-     *       thread is a bad idea. And even if the client can chug through
-     *       that, we still end up with a large vertex cache. This can slow
-     *       rendering to a crawl, even with a VBO.
+     * If the pending build has finished, start uploading its output.
      */
-    protected void populateVertexCacheWork(List<Vector3> vertexCache, RegionBase region, int offX, int offY, int offZ, int sizeX, int sizeY, int sizeZ) {
-        for (int x = 0; x < sizeX; x++) {
-            for (int y = 0; y < sizeY; y++) {
-                for (int z = 0; z < sizeZ; z++) {
-                    if (!region.isInsideRegion(offX + x, offY + y, offZ + z)) {
-                        continue;
-                    }
-                    // Some of these calls to isInsideRegion will be outside
-                    // of the AABB, but that's not a problem.
-                    boolean west  = region.isInsideRegion(offX + x - 1, offY + y, offZ + z);
-                    boolean east  = region.isInsideRegion(offX + x + 1, offY + y, offZ + z);
-                    boolean down  = region.isInsideRegion(offX + x, offY + y - 1, offZ + z);
-                    boolean up    = region.isInsideRegion(offX + x, offY + y + 1, offZ + z);
-                    boolean north = region.isInsideRegion(offX + x, offY + y, offZ + z - 1);
-                    boolean south = region.isInsideRegion(offX + x, offY + y, offZ + z + 1);
-                    if (west && east && down && up && north && south) {
-                        // Interior block is completely surrounded by other
-                        // interior blocks.
-                        continue;
-                    }
-                    // No offset for the vertex coords. The vertexOffset
-                    // transform will handle that during rendering.
-                    double x0 = x + CUBE_MARGIN;
-                    double x1 = x + 1 - CUBE_MARGIN;
-                    double y0 = y + CUBE_MARGIN;
-                    double y1 = y + 1 - CUBE_MARGIN;
-                    double z0 = z + CUBE_MARGIN;
-                    double z1 = z + 1 - CUBE_MARGIN;
-                    if (!west || !down) {
-                        vertexCache.add(new Vector3(x0, y0, z0));
-                        vertexCache.add(new Vector3(x0, y0, z1));
-                    }
-                    if (!west || !up) {
-                        vertexCache.add(new Vector3(x0, y1, z0));
-                        vertexCache.add(new Vector3(x0, y1, z1));
-                    }
-                    if (!west || !north) {
-                        vertexCache.add(new Vector3(x0, y0, z0));
-                        vertexCache.add(new Vector3(x0, y1, z0));
-                    }
-                    if (!west || !south) {
-                        vertexCache.add(new Vector3(x0, y0, z1));
-                        vertexCache.add(new Vector3(x0, y1, z1));
-                    }
-                    if (!down || !north) {
-                        vertexCache.add(new Vector3(x0, y0, z0));
-                        vertexCache.add(new Vector3(x1, y0, z0));
-                    }
-                    if (!down || !south) {
-                        vertexCache.add(new Vector3(x0, y0, z1));
-                        vertexCache.add(new Vector3(x1, y0, z1));
-                    }
-                    if (!up || !north) {
-                        vertexCache.add(new Vector3(x0, y1, z0));
-                        vertexCache.add(new Vector3(x1, y1, z0));
-                    }
-                    if (!up || !south) {
-                        vertexCache.add(new Vector3(x0, y1, z1));
-                        vertexCache.add(new Vector3(x1, y1, z1));
-                    }
-                    if (!east || !down) {
-                        vertexCache.add(new Vector3(x1, y0, z0));
-                        vertexCache.add(new Vector3(x1, y0, z1));
-                    }
-                    if (!east || !up) {
-                        vertexCache.add(new Vector3(x1, y1, z0));
-                        vertexCache.add(new Vector3(x1, y1, z1));
-                    }
-                    if (!east || !north) {
-                        vertexCache.add(new Vector3(x1, y0, z0));
-                        vertexCache.add(new Vector3(x1, y1, z0));
-                    }
-                    if (!east || !south) {
-                        vertexCache.add(new Vector3(x1, y0, z1));
-                        vertexCache.add(new Vector3(x1, y1, z1));
+    private void takeBuildIfReady() {
+        if (pendingBuild == null || !pendingBuild.isDone()) {
+            return;
+        }
+        VertexCacheBuild build;
+        try {
+            build = pendingBuild.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } catch (ExecutionException e) {
+            throw new RuntimeException("unable to build vertex cache", e.getCause());
+        } finally {
+            pendingBuild = null;
+        }
+        MeshCache.put(build.shapeKey, build.mesh);
+        startUpload(build.mesh, build.aabbLower);
+    }
+
+    private void startUpload(SectionMesh newMesh, ReadonlyVector3 aabbLower) {
+        nextMesh = newMesh;
+        nextCorner = aabbLower;
+        nextUploads = newMesh.sections.values().iterator();
+    }
+
+    /**
+     * Replace the current outline, removing the VBOs of sections no longer
+     * used. The new outline's sections must already be uploaded.
+     */
+    private void swap(SectionMesh newMesh, ReadonlyVector3 aabbLower) {
+        releaseUnused(mesh, newMesh);
+        mesh = newMesh;
+        placementLevels = new int[newMesh.placements.size()];
+        meshSize.set(Vector3.ZEROS);
+        for (SectionMesh.Placement placement : newMesh.placements) {
+            meshSize.set(
+                    Math.max(meshSize.getX(), placement.x + VertexSection.SIZE),
+                    Math.max(meshSize.getY(), placement.y + VertexSection.SIZE),
+                    Math.max(meshSize.getZ(), placement.z + VertexSection.SIZE));
+        }
+        setCorner(aabbLower);
+        updatePlacementLevels(true);
+    }
+
+    /**
+     * Move vertexOffset to the lower corner of the AABB, which is in outline
+     * cells rather than blocks for a coarse outline.
+     */
+    private void setCorner(ReadonlyVector3 aabbLower) {
+        vertexOffset.getTranslateXYZ().set(aabbLower).scale(getOutlineScale());
+    }
+
+    private double getOutlineScale() {
+        return outlineStep > RenderSizePolicy.FULL ? outlineStep : 1.0;
+    }
+
+    public int getOutlineStep() {
+        return outlineStep;
+    }
+
+    /**
+     * Remove the VBOs of every section in oldMesh that isn't in newMesh.
+     */
+    private static void releaseUnused(SectionMesh oldMesh, SectionMesh newMesh) {
+        for (VertexSection section : oldMesh.sections.values()) {
+            if (newMesh.sections.get(section.getSignature()) != section) {
+                section.removeVBO();
+            }
+        }
+    }
+
+    /**
+     * Cancel the in-flight build and drop any partly uploaded outline, as
+     * it's been superseded.
+     */
+    private void cancelPendingBuild() {
+        if (pendingBuild != null) {
+            pendingBuild.cancel(true);
+            pendingBuild = null;
+        }
+        if (nextMesh != null) {
+            releaseUnused(nextMesh, mesh);
+            nextMesh = null;
+            nextCorner = null;
+            nextUploads = null;
+        }
+    }
+
+    private static synchronized ExecutorService getBuilderThread() {
+        if (builderThread == null) {
+            builderThread = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "BuildRegion vertex cache builder");
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                }
+            });
+        }
+        return builderThread;
+    }
+
+    /**
+     * For use by populateVertexCacheWork, which runs on the background
+     * thread: bail out if the build has been superseded.
+     */
+    protected static void checkCancelled() {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new CancellationException();
+        }
+    }
+
+    /**
+     * A single vertex cache build, run on the background thread. Owns its
+     * region snapshot and output; neither is touched by the render thread
+     * until the build is done. The previous sections are only read.
+     */
+    private class VertexCacheBuild implements Callable<VertexCacheBuild> {
+        private final RegionBase region;
+        private final RegionBase.ShapeKey shapeKey;
+        private final ReadonlyVector3 aabbLower;
+        private final ReadonlyVector3 aabbUpper;
+        private final Map<VertexSection.Signature, VertexSection> prevSections;
+        private final SectionMesh mesh = new SectionMesh();
+        /** The coarse levels of detail are built from this, on demand. */
+        private final RegionSampled lodRegion;
+
+        public VertexCacheBuild(RegionBase region, RegionBase.ShapeKey shapeKey,
+                ReadonlyVector3 aabbLower, ReadonlyVector3 aabbUpper,
+                Map<VertexSection.Signature, VertexSection> prevSections) {
+            this.region = region;
+            this.shapeKey = shapeKey;
+            this.aabbLower = aabbLower;
+            this.aabbUpper = aabbUpper;
+            this.prevSections = prevSections;
+            lodRegion = new RegionSampled(region, VertexSection.LOD_STEP,
+                    (int) aabbLower.getX(), (int) aabbLower.getY(), (int) aabbLower.getZ());
+        }
+
+        @Override
+        public VertexCacheBuild call() {
+            // Sections are aligned to the AABB's lower corner, so the output
+            // is the same wherever the region is.
+            final int offX = (int) aabbLower.getX();
+            final int offY = (int) aabbLower.getY();
+            final int offZ = (int) aabbLower.getZ();
+            final int size = VertexSection.SIZE;
+            VertexSection.Slab slab = new VertexSection.Slab();
+            for (int z = offZ; z <= (int) aabbUpper.getZ(); z += size) {
+                for (int y = offY; y <= (int) aabbUpper.getY(); y += size) {
+                    checkCancelled();
+                    slab.scan(region, y, z);
+                    for (int x = offX; x <= (int) aabbUpper.getX(); x += size) {
+                        VertexSection.Signature signature = slab.getSignature(x);
+                        if (signature == null) {
+                            continue;
+                        }
+                        VertexSection section = getSection(signature, x, y, z);
+                        if (!section.isEmpty()) {
+                            mesh.placements.add(new SectionMesh.Placement(x - offX, y - offY, z - offZ, section));
+                        }
                     }
                 }
             }
+            return this;
+        }
+
+        private VertexSection getSection(VertexSection.Signature signature, int x, int y, int z) {
+            VertexSection section = mesh.sections.get(signature);
+            if (section == null) {
+                section = prevSections.get(signature);
+            }
+            if (section == null) {
+                // Only full detail for now; the coarse levels are built
+                // from lodRegion on demand.
+                final int size = VertexSection.SIZE;
+                final int step = VertexSection.LOD_STEP;
+                VertexStore vertexCache = new VertexStore();
+                populateVertexCacheWork(vertexCache, null, region, x, y, z, size, size, size);
+                int unmergedVertexCount = vertexCache.size();
+                finishVertexCache(vertexCache);
+                section = new VertexSection(signature, vertexCache, unmergedVertexCount, lodRegion,
+                        (x - (int) aabbLower.getX()) / step,
+                        (y - (int) aabbLower.getY()) / step,
+                        (z - (int) aabbLower.getZ()) / step);
+            }
+            mesh.sections.put(signature, section);
+            return section;
         }
     }
 
     /**
-     * If the client supports VBOs, copy the contents of vertexCache to a new
-     * VBO, and register it. Any previous VBO will be removed.
+     * @return the total number of vertices rendered, if every section is
+     *         within view distance
+     */
+    public int getVertexCount() {
+        return mesh.getVertexCount();
+    }
+
+    /**
+     * @return the same as getVertexCount, but before mergeCollinearLines
+     */
+    public int getUnmergedVertexCount() {
+        return mesh.getUnmergedVertexCount();
+    }
+
+    public int getSectionCount() {
+        return mesh.placements.size();
+    }
+
+    /**
+     * Visit every boundary block of the region, i.e. blocks inside the region
+     * bordering at least one block outside it, and add the appropriate
+     * vertices to the cache. Interior blocks are never visited.
+     * <p>
+     * If creaseCache isn't null, also add just the convex edges there, i.e.
+     * edges between two exposed faces. This omits the grid lines across flat
+     * faces, leaving a silhouette of the region.
+     * <p>
+     * Runs on the background thread, so only the parameters may be used.
+     * Implementations should call checkCancelled() periodically. The coarse
+     * levels of detail are built by the same method on the render thread,
+     * where checkCancelled() never throws.
+     * <p>
+     * For a coarse outline the region is a RegionSampled, so the coordinates
+     * are outline cells rather than blocks.
      */
-    protected void createVBO() {
-        if (!GLContext.getCapabilities().GL_ARB_vertex_buffer_object) {
-            vboId = 0;
+    protected void populateVertexCacheWork(final VertexStore vertexCache, final VertexStore creaseCache, RegionBase region, final int offX, final int offY, final int offZ, int sizeX, int sizeY, int sizeZ) {
+        region.getBoundaryBlocks(
+                offX, offX + sizeX - 1,
+                offY, offY + sizeY - 1,
+                offZ, offZ + sizeZ - 1,
+                new BoundaryVisitor() {
+            @Override
+            public void visitBoundaryBlock(int x, int y, int z, int exposedFaces) {
+                checkCancelled();
+                final boolean west  = (exposedFaces & FACE_WEST) != 0;
+                final boolean east  = (exposedFaces & FACE_EAST) != 0;
+                final boolean down  = (exposedFaces & FACE_DOWN) != 0;
+                final boolean up    = (exposedFaces & FACE_UP) != 0;
+                final boolean north = (exposedFaces & FACE_NORTH) != 0;
+                final boolean south = (exposedFaces & FACE_SOUTH) != 0;
+                // No offset for the vertex coords. The vertexOffset
+                // transform will handle that during rendering.
+                x -= offX;
+                y -= offY;
+                z -= offZ;
+                double x0 = x + CUBE_MARGIN;
+                double x1 = x + 1 - CUBE_MARGIN;
+                double y0 = y + CUBE_MARGIN;
+                double y1 = y + 1 - CUBE_MARGIN;
+                double z0 = z + CUBE_MARGIN;
+                double z1 = z + 1 - CUBE_MARGIN;
+                edge(west,  down,  x0, y0, z0, x0, y0, z1);
+                edge(west,  up,    x0, y1, z0, x0, y1, z1);
+                edge(west,  north, x0, y0, z0, x0, y1, z0);
+                edge(west,  south, x0, y0, z1, x0, y1, z1);
+                edge(down,  north, x0, y0, z0, x1, y0, z0);
+                edge(down,  south, x0, y0, z1, x1, y0, z1);
+                edge(up,    north, x0, y1, z0, x1, y1, z0);
+                edge(up,    south, x0, y1, z1, x1, y1, z1);
+                edge(east,  down,  x1, y0, z0, x1, y0, z1);
+                edge(east,  up,    x1, y1, z0, x1, y1, z1);
+                edge(east,  north, x1, y0, z0, x1, y1, z0);
+                edge(east,  south, x1, y0, z1, x1, y1, z1);
+            }
+
+            /**
+             * Outline the edge between two faces if either is exposed. If
+             * both are, it's also a convex crease of the region's surface.
+             */
+            private void edge(boolean exposedA, boolean exposedB,
+                    double xA, double yA, double zA, double xB, double yB, double zB) {
+                if (exposedA || exposedB) {
+                    vertexCache.add(xA, yA, zA).add(xB, yB, zB);
+                }
+                if (exposedA && exposedB && creaseCache != null) {
+                    creaseCache.add(xA, yA, zA).add(xB, yB, zB);
+                }
+            }
+        });
+    }
+
+    /**
+     * Join adjacent collinear line segments along each axis. E.g., a flat
+     * face of a large region has a row of block edges for every block;
+     * these are collapsed into a single long line.
+     * <p>
+     * Block edges are inset by CUBE_MARGIN, so segments belonging to
+     * neighboring blocks are separated by a small gap. Segments are merged
+     * if the gap between them is no larger than that.
+     */
+    protected static void mergeCollinearLines(VertexStore vertexCache) {
+        final int count = vertexCache.size() / 2;
+        if (count < 2) {
             return;
         }
+        LineSegment[] segments = new LineSegment[count];
+        for (int i = 0; i < count; i++) {
+            segments[i] = new LineSegment(vertexCache, i*2);
+        }
+        Arrays.sort(segments);
+
+        vertexCache.clear();
+        LineSegment cur = segments[0];
+        for (int i = 1; i < count; i++) {
+            LineSegment next = segments[i];
+            if (cur.isCollinear(next) && next.start - cur.end <= MERGE_GAP) {
+                cur.end = Math.max(cur.end, next.end);
+            } else {
+                cur.addTo(vertexCache);
+                cur = next;
+            }
+        }
+        cur.addTo(vertexCache);
+    }
 
-        // Convert down to 32-bit floating point to cut our VRAM usage in half.
-        FloatBuffer vbo = BufferUtils.createFloatBuffer(vertexCache.size() * 3);
-        for (Vector3 vertex : vertexCache) {
-            vbo.put((float) vertex.getX());
-            vbo.put((float) vertex.getY());
-            vbo.put((float) vertex.getZ());
+    /**
+     * An axis-aligned line segment: start and end are coordinates along the
+     * axis, a and b are the fixed coordinates of the other two axes.
+     */
+    private static class LineSegment implements Comparable<LineSegment> {
+        private final Axis axis;
+        private final double a;
+        private final double b;
+        private final double start;
+        private double end;
+
+        /**
+         * @param index the first of the two vertices in the store
+         */
+        public LineSegment(VertexStore store, int index) {
+            final double x0 = store.getX(index);
+            final double y0 = store.getY(index);
+            final double z0 = store.getZ(index);
+            final double x1 = store.getX(index + 1);
+            final double y1 = store.getY(index + 1);
+            final double z1 = store.getZ(index + 1);
+            if (x0 != x1) {
+                axis = Axis.X;
+                a = y0;
+                b = z0;
+                start = Math.min(x0, x1);
+                end = Math.max(x0, x1);
+            } else if (y0 != y1) {
+                axis = Axis.Y;
+                a = z0;
+                b = x0;
+                start = Math.min(y0, y1);
+                end = Math.max(y0, y1);
+            } else {
+                axis = Axis.Z;
+                a = x0;
+                b = y0;
+                start = Math.min(z0, z1);
+                end = Math.max(z0, z1);
+            }
         }
-        vbo.flip();
 
-        // Register the VBO, copying the float buffer into VRAM.
-        removeVBO();
-        vboId = ARBVertexBufferObject.glGenBuffersARB();
-        ARBVertexBufferObject.glBindBufferARB(ARBVertexBufferObject.GL_ARRAY_BUFFER_ARB, vboId);
-        ARBVertexBufferObject.glBufferDataARB(ARBVertexBufferObject.GL_ARRAY_BUFFER_ARB, vbo, ARBVertexBufferObject.GL_STATIC_DRAW_ARB);
-        ARBVertexBufferObject.glBindBufferARB(ARBVertexBufferObject.GL_ARRAY_BUFFER_ARB, 0);
+        public boolean isCollinear(LineSegment other) {
+            return axis == other.axis && a == other.a && b == other.b;
+        }
 
-        // We could clear vertexCache at this point as it's redundant, but keep
-        // it around just in case the VBO gets removed prematurely.
-    }
+        @Override
+        public int compareTo(LineSegment other) {
+            if (axis != other.axis) {
+                return axis.compareTo(other.axis);
+            } else if (a != other.a) {
+                return a < other.a ? -1 : 1;
+            } else if (b != other.b) {
+                return b < other.b ? -1 : 1;
+            } else if (start != other.start) {
+                return start < other.start ? -1 : 1;
+            }
+            return 0;
+        }
 
-    protected void removeVBO() {
-        if (vboId == 0) {
-            return;
+        public void addTo(VertexStore vertexCache) {
+            if (axis == Axis.X) {
+                vertexCache.add(start, a, b).add(end, a, b);
+            } else if (axis == Axis.Y) {
+                vertexCache.add(b, start, a).add(b, end, a);
+            } else {
+                vertexCache.add(a, b, start).add(a, b, end);
+            }
         }
-        ARBVertexBufferObject.glDeleteBuffersARB(vboId);
-        vboId = 0;
     }
 }
@@ -0,0 +1,93 @@
+package com.bencvt.minecraft.buildregion.ui.world;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import libshapedraw.primitive.ReadonlyVector3;
+
+/**
+ * A RenderVertexBuffer's complete outline: every section built for it and
+ * where the non-empty ones are placed, relative to the lower corner of the
+ * region's AABB. Nothing here depends on the region's position, which is
+ * what allows the MeshCache to reuse an outline for a moved region.
+ * <p>
+ * Populated by a single build; treat as immutable afterwards.
+ *
+ * @author bencvt
+ */
+class SectionMesh {
+    /** Every section built for this outline, keyed by contents. */
+    public final Map<VertexSection.Signature, VertexSection> sections = new HashMap<VertexSection.Signature, VertexSection>();
+
+    /** The non-empty sections, with their positions. */
+    public final List<Placement> placements = new ArrayList<Placement>();
+
+    /**
+     * @return the total number of vertices rendered, if every section is
+     *         within view distance
+     */
+    public int getVertexCount() {
+        int count = 0;
+        for (Placement placement : placements) {
+            count += placement.section.getVertexCount();
+        }
+        return count;
+    }
+
+    /**
+     * @return the same as getVertexCount, but before mergeCollinearLines
+     */
+    public int getUnmergedVertexCount() {
+        int count = 0;
+        for (Placement placement : placements) {
+            count += placement.section.getUnmergedVertexCount();
+        }
+        return count;
+    }
+
+    /**
+     * @return the approximate local memory used by the sections' vertices
+     */
+    public long getByteCount() {
+        long bytes = 0;
+        for (VertexSection section : sections.values()) {
+            bytes += section.getByteCount();
+        }
+        return bytes;
+    }
+
+    /**
+     * A non-empty section and where to render it, relative to the lower
+     * corner of the AABB.
+     */
+    public static class Placement {
+        public final int x;
+        public final int y;
+        public final int z;
+        public final VertexSection section;
+
+        public Placement(int x, int y, int z, VertexSection section) {
+            this.x = x;
+            this.y = y;
+            this.z = z;
+            this.section = section;
+        }
+
+        /**
+         * @return the squared distance between the point and the closest
+         *         point of this section
+         */
+        public double distanceSquared(ReadonlyVector3 corner, ReadonlyVector3 point) {
+            return distanceSquared(corner.getX() + x, point.getX()) +
+                    distanceSquared(corner.getY() + y, point.getY()) +
+                    distanceSquared(corner.getZ() + z, point.getZ());
+        }
+
+        private static double distanceSquared(double lower, double value) {
+            double d = Math.max(0.0, Math.max(lower - value, value - (lower + VertexSection.SIZE)));
+            return d * d;
+        }
+    }
+}
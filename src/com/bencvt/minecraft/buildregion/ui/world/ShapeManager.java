@@ -11,6 +11,7 @@ import com.bencvt.minecraft.buildregion.region.RegionCylinder;
 import com.bencvt.minecraft.buildregion.region.RegionPlane;
 import com.bencvt.minecraft.buildregion.region.RegionSphere;
 import com.bencvt.minecraft.buildregion.region.RegionType;
+import com.bencvt.minecraft.buildregion.ui.MessageManager;
 
 /**
  * Manage LibShapeDraw Shape objects and animations... i.e., the in-world GUI.
@@ -18,14 +19,32 @@ import com.bencvt.minecraft.buildregion.region.RegionType;
  * @author bencvt
  */
 public class ShapeManager {
+    /**
+     * How long shapes may spend per frame on deferred render thread work,
+     * in nanoseconds.
+     */
+    public static final long WORK_BUDGET = 2000000L;
+
     private final Controller controller;
     private final LibShapeDraw libShapeDraw;
+    private final RenderSizePolicy sizePolicy;
+    private final Frustum frustum;
     private RenderBase mainShape;
     private RenderBase prevShape;
+    /** The outline step used to create mainShape. */
+    private int mainShapeOutlineStep;
+    /**
+     * The outline step the player was last told about. Only region types
+     * subject to the size policy change it.
+     */
+    private int reportedOutlineStep;
 
     public ShapeManager(Controller controller) {
         this.controller = controller;
         libShapeDraw = new LibShapeDraw().verifyInitialized();
+        sizePolicy = new RenderSizePolicy();
+        frustum = new Frustum();
+        reportedOutlineStep = RenderSizePolicy.FULL;
     }
 
     public void reset() {
@@ -45,15 +64,60 @@ public class ShapeManager {
             removeShape(animate);
             return;
         }
-        if (mainShape != null && mainShape.updateIfPossible(region, animate)) {
+        final int outlineStep = getOutlineStep(region);
+        if (isSizeLimited(region)) {
+            reportOutlineStep(outlineStep);
+        }
+        // A shape's outline step is fixed, so if the region has grown or
+        // shrunk past one of the policy's thresholds, replace the shape.
+        if (mainShape != null && outlineStep == mainShapeOutlineStep &&
+                mainShape.updateIfPossible(region, animate)) {
             return;
         }
         removeShape(animate);
-        mainShape = createShape(region);
+        mainShape = createShape(region, outlineStep);
+        mainShape.setFrustum(frustum);
+        mainShapeOutlineStep = outlineStep;
         libShapeDraw.addShape(mainShape);
         mainShape.animateFadeIn(animate);
     }
 
+    /**
+     * Consult the size policy, for region types rendered with a
+     * RenderVertexBuffer. Other types are cheap to render at any size.
+     */
+    private int getOutlineStep(RegionBase region) {
+        if (isSizeLimited(region)) {
+            return sizePolicy.getOutlineStep(region);
+        }
+        return RenderSizePolicy.FULL;
+    }
+
+    private static boolean isSizeLimited(RegionBase region) {
+        final RegionType r = region.getRegionType();
+        return r == RegionType.CYLINDER || r == RegionType.SPHERE;
+    }
+
+    /**
+     * Tell the player whenever the outline's level of detail changes. This
+     * goes to chat rather than the HUD, as the caller is about to overwrite
+     * the HUD message with the new region's dimensions.
+     */
+    private void reportOutlineStep(int outlineStep) {
+        if (outlineStep == reportedOutlineStep) {
+            return;
+        }
+        reportedOutlineStep = outlineStep;
+        final MessageManager messageManager = controller.getMessageManager();
+        if (outlineStep == RenderSizePolicy.FULL) {
+            messageManager.chat(Controller.i18n("chat.outline.full"));
+        } else if (outlineStep == RenderSizePolicy.SHELL_ONLY) {
+            messageManager.chat(Controller.i18n("chat.outline.shell"));
+        } else {
+            messageManager.chat(Controller.i18n("chat.outline.coarse", outlineStep));
+        }
+    }
+
     private void removeShape(boolean animate) {
         if (mainShape == null) {
             return;
@@ -67,7 +131,7 @@ public class ShapeManager {
         prevShape.animateFadeOut(animate);
     }
 
-    private RenderBase createShape(RegionBase region) {
+    private RenderBase createShape(RegionBase region, int outlineStep) {
         final ReadonlyColor colorVisible = controller.getBuildMode().getColorVisible();
         final ReadonlyColor colorHidden = controller.getBuildMode().getColorHidden();
         final RegionType r = region.getRegionType();
@@ -76,9 +140,9 @@ public class ShapeManager {
         } else if (r == RegionType.CUBOID) {
             return new RenderCuboid(colorVisible, colorHidden, (RegionCuboid) region);
         } else if (r == RegionType.CYLINDER) {
-            return new RenderCylinder(colorVisible, colorHidden, (RegionCylinder) region);
+            return new RenderCylinder(colorVisible, colorHidden, (RegionCylinder) region, outlineStep);
         } else if (r == RegionType.SPHERE) {
-            return new RenderSphere(colorVisible, colorHidden, (RegionSphere) region);
+            return new RenderSphere(colorVisible, colorHidden, (RegionSphere) region, outlineStep);
         } else {
             throw new IllegalStateException();
         }
@@ -89,4 +153,20 @@ public class ShapeManager {
             mainShape.updateObserverPosition(playerCoords);
         }
     }
+
+    /**
+     * Let the shapes do some of their deferred work, within the per-frame
+     * budget. Must be called from the render thread, before rendering. The
+     * main shape goes first. Work that's stale because the region changed
+     * is dropped by the shape itself.
+     */
+    public void runPendingWork() {
+        final long deadline = System.nanoTime() + WORK_BUDGET;
+        if (mainShape != null) {
+            mainShape.runPendingWork(deadline);
+        }
+        if (prevShape != null) {
+            prevShape.runPendingWork(deadline);
+        }
+    }
 }
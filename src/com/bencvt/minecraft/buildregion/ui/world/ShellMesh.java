@@ -0,0 +1,176 @@
+package com.bencvt.minecraft.buildregion.ui.world;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import libshapedraw.MinecraftAccess;
+
+import org.lwjgl.opengl.GL11;
+
+/**
+ * A unit sphere or cylinder, used to render the translucent shells around
+ * regions. This replaces the GLU quadrics, which re-tessellate every time
+ * they're drawn.
+ * <p>
+ * Meshes are generated once per level of detail and shared by every shape
+ * (and never removed, as they're small). The child class's renderShell is
+ * responsible for transforming the unit mesh into place.
+ * <p>
+ * Uses the same local coordinates as GLU: the sphere is centered on the
+ * origin with its poles on the z axis; the cylinder's base is centered on the
+ * origin and it extends to z=1.
+ *
+ * @author bencvt
+ */
+class ShellMesh {
+    public static final int MIN_DETAIL = 8;
+    public static final int MAX_DETAIL = 48;
+    /**
+     * Number of slices for a shell whose radius equals its distance from the
+     * observer. Shells further away use proportionally fewer.
+     */
+    public static final double DETAIL_SCALE = 48.0;
+
+    private static final Map<Integer, ShellMesh> spheres = new HashMap<Integer, ShellMesh>();
+    private static final Map<Integer, ShellMesh> cylinders = new HashMap<Integer, ShellMesh>();
+
+    private final VertexStore lines;
+    private final VertexStore triangles;
+
+    private ShellMesh() {
+        lines = new VertexStore();
+        triangles = new VertexStore();
+    }
+
+    /**
+     * @return a level of detail (i.e., number of slices) appropriate for a
+     *         shell of the specified radius viewed from the specified
+     *         distance. Rounded to a multiple of 4 to limit the number of
+     *         meshes generated.
+     */
+    public static int getDetail(double radius, double distance) {
+        if (distance <= radius) {
+            return MAX_DETAIL;
+        }
+        int detail = (int) Math.ceil(DETAIL_SCALE * radius / distance / 4.0) * 4;
+        return Math.max(MIN_DETAIL, Math.min(MAX_DETAIL, detail));
+    }
+
+    /**
+     * Only call from the render thread.
+     */
+    public static ShellMesh getSphere(int detail) {
+        ShellMesh mesh = spheres.get(detail);
+        if (mesh == null) {
+            mesh = new ShellMesh();
+            mesh.buildSphere(detail, detail);
+            spheres.put(detail, mesh);
+        }
+        return mesh;
+    }
+
+    /**
+     * Only call from the render thread.
+     */
+    public static ShellMesh getCylinder(int detail) {
+        ShellMesh mesh = cylinders.get(detail);
+        if (mesh == null) {
+            mesh = new ShellMesh();
+            mesh.buildCylinder(detail);
+            cylinders.put(detail, mesh);
+        }
+        return mesh;
+    }
+
+    /**
+     * Equivalent to drawing the GLU quadric with GLU_LINE.
+     */
+    public void renderLines(MinecraftAccess mc) {
+        lines.render(mc, GL11.GL_LINES, 0, lines.size());
+    }
+
+    /**
+     * Equivalent to drawing the GLU quadric with GLU_FILL.
+     *
+     * @param inside if true, the faces point inward (GLU_INSIDE)
+     */
+    public void renderFill(MinecraftAccess mc, boolean inside) {
+        if (inside) {
+            GL11.glFrontFace(GL11.GL_CW);
+        }
+        triangles.render(mc, GL11.GL_TRIANGLES, 0, triangles.size());
+        if (inside) {
+            GL11.glFrontFace(GL11.GL_CCW);
+        }
+    }
+
+    private void buildSphere(int slices, int stacks) {
+        // Grid of vertices, stack-major, including the duplicate seam column
+        // so the quads can be assembled uniformly.
+        final double[] x = new double[(stacks + 1) * (slices + 1)];
+        final double[] y = new double[x.length];
+        final double[] z = new double[x.length];
+        for (int i = 0; i <= stacks; i++) {
+            final double phi = Math.PI * i / stacks;
+            for (int j = 0; j <= slices; j++) {
+                final double theta = 2.0 * Math.PI * j / slices;
+                final int v = i * (slices + 1) + j;
+                x[v] = Math.sin(phi) * Math.cos(theta);
+                y[v] = Math.sin(phi) * Math.sin(theta);
+                z[v] = Math.cos(phi);
+            }
+        }
+        for (int i = 0; i < stacks; i++) {
+            for (int j = 0; j < slices; j++) {
+                final int a = i * (slices + 1) + j;
+                final int b = a + slices + 1;
+                // Longitude line, plus latitude line except at the poles.
+                addLine(x, y, z, a, b);
+                if (i > 0) {
+                    addLine(x, y, z, a, a + 1);
+                }
+                // Counterclockwise when viewed from outside.
+                addTriangle(x, y, z, a, b, b + 1);
+                addTriangle(x, y, z, a, b + 1, a + 1);
+            }
+        }
+        finish();
+    }
+
+    private void buildCylinder(int slices) {
+        final double[] x = new double[(slices + 1) * 2];
+        final double[] y = new double[x.length];
+        final double[] z = new double[x.length];
+        for (int j = 0; j <= slices; j++) {
+            final double theta = 2.0 * Math.PI * j / slices;
+            x[j*2] = x[j*2 + 1] = Math.cos(theta);
+            y[j*2] = y[j*2 + 1] = Math.sin(theta);
+            z[j*2] = 0.0;
+            z[j*2 + 1] = 1.0;
+        }
+        for (int j = 0; j < slices; j++) {
+            final int a = j*2;
+            addLine(x, y, z, a, a + 1);
+            addLine(x, y, z, a, a + 2);
+            addLine(x, y, z, a + 1, a + 3);
+            addTriangle(x, y, z, a, a + 2, a + 3);
+            addTriangle(x, y, z, a, a + 3, a + 1);
+        }
+        finish();
+    }
+
+    private void addLine(double[] x, double[] y, double[] z, int a, int b) {
+        lines.add(x[a], y[a], z[a]).add(x[b], y[b], z[b]);
+    }
+
+    private void addTriangle(double[] x, double[] y, double[] z, int a, int b, int c) {
+        triangles.add(x[a], y[a], z[a]).add(x[b], y[b], z[b]).add(x[c], y[c], z[c]);
+    }
+
+    private void finish() {
+        lines.trimToSize();
+        triangles.trimToSize();
+        lines.createVBO();
+        triangles.createVBO();
+    }
+}
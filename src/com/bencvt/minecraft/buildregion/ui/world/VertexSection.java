@@ -0,0 +1,288 @@
+package com.bencvt.minecraft.buildregion.ui.world;
+
+import java.util.Arrays;
+
+import com.bencvt.minecraft.buildregion.region.RegionBase;
+import com.bencvt.minecraft.buildregion.region.RegionBase.SpanVisitor;
+
+/**
+ * One 16x16x16 section of a RenderVertexBuffer's outline. Sections are
+ * aligned to the lower corner of the region's AABB rather than to world
+ * coordinates, so an outline's sections don't change when the region is
+ * moved. The vertices are relative to the section's lower corner, so
+ * sections with identical contents share a single instance (and VBO) no
+ * matter where they're rendered.
+ * <p>
+ * Each section has a vertex cache per level of detail: LOD_FULL outlines
+ * every block, LOD_COARSE outlines cells of LOD_STEP blocks, and
+ * LOD_SILHOUETTE only has the coarse cells' convex edges. The coarse levels
+ * are relative to the section's lower corner too, but in cells.
+ * <p>
+ * Only LOD_FULL is built up front. The coarse levels are built the first time
+ * a placement of the section asks for them (see RenderVertexBuffer), from the
+ * sampled region kept until then.
+ * <p>
+ * A section's contents are identified by its signature: the region's spans
+ * for every row passing through the section, plus a border wide enough to
+ * cover the blocks sampled by the neighboring coarse cells.
+ *
+ * @author bencvt
+ */
+class VertexSection {
+    public static final int SHIFT = 4;
+    public static final int SIZE = 1 << SHIFT;
+    public static final int LOD_FULL = 0;
+    public static final int LOD_COARSE = 1;
+    public static final int LOD_SILHOUETTE = 2;
+    public static final int LOD_COUNT = 3;
+    /** Blocks per cell for the coarse levels; must divide SIZE. */
+    public static final int LOD_STEP = 4;
+    /**
+     * A coarse cell samples the block at its center, i.e. LOD_STEP/2 blocks
+     * in. Its neighbors outside the section are sampled up to this far out.
+     */
+    public static final int BORDER = LOD_STEP - 1;
+
+    private final Signature signature;
+    /** One per level of detail; the coarse levels are null until built. */
+    private final VertexStore[] vertexCaches = new VertexStore[LOD_COUNT];
+    private final int unmergedVertexCount;
+    /** The coarse levels are built from this; null once they are. */
+    private RegionSampled lodRegion;
+    private final int lodCellX;
+    private final int lodCellY;
+    private final int lodCellZ;
+
+    /**
+     * @param lodRegion the region to build the coarse levels from
+     * @param lodCellX the section's lower corner in lodRegion
+     */
+    public VertexSection(Signature signature, VertexStore fullVertexCache, int unmergedVertexCount,
+            RegionSampled lodRegion, int lodCellX, int lodCellY, int lodCellZ) {
+        this.signature = signature;
+        vertexCaches[LOD_FULL] = fullVertexCache;
+        this.unmergedVertexCount = unmergedVertexCount;
+        this.lodRegion = lodRegion;
+        this.lodCellX = lodCellX;
+        this.lodCellY = lodCellY;
+        this.lodCellZ = lodCellZ;
+    }
+
+    public Signature getSignature() {
+        return signature;
+    }
+
+    /**
+     * @return true if there's nothing to draw at full detail
+     */
+    public boolean isEmpty() {
+        return vertexCaches[LOD_FULL].isEmpty();
+    }
+
+    /**
+     * @return the number of vertices drawn at full detail, including
+     *         duplicates
+     */
+    public int getVertexCount() {
+        return vertexCaches[LOD_FULL].getElementCount();
+    }
+
+    public int getUnmergedVertexCount() {
+        return unmergedVertexCount;
+    }
+
+    /**
+     * @return the level's vertices, or null if it hasn't been built yet
+     */
+    public VertexStore getVertexCache(int level) {
+        return vertexCaches[level];
+    }
+
+    public boolean hasLevel(int level) {
+        return vertexCaches[level] != null;
+    }
+
+    public RegionSampled getLodRegion() {
+        return lodRegion;
+    }
+
+    public int getLodCellX() {
+        return lodCellX;
+    }
+
+    public int getLodCellY() {
+        return lodCellY;
+    }
+
+    public int getLodCellZ() {
+        return lodCellZ;
+    }
+
+    /**
+     * Set the coarse levels, built from getLodRegion, which is no longer
+     * needed.
+     */
+    public void setCoarseLevels(VertexStore coarse, VertexStore silhouette) {
+        vertexCaches[LOD_COARSE] = coarse;
+        vertexCaches[LOD_SILHOUETTE] = silhouette;
+        lodRegion = null;
+    }
+
+    /**
+     * @return the local memory used by every level of detail built so far
+     */
+    public long getByteCount() {
+        long bytes = 0;
+        for (VertexStore vertexCache : vertexCaches) {
+            if (vertexCache != null) {
+                bytes += vertexCache.getByteCount();
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Upload every level of detail built so far.
+     */
+    public void createVBO() {
+        for (VertexStore vertexCache : vertexCaches) {
+            if (vertexCache != null) {
+                vertexCache.createVBO();
+            }
+        }
+    }
+
+    public void removeVBO() {
+        for (VertexStore vertexCache : vertexCaches) {
+            if (vertexCache != null) {
+                vertexCache.removeVBO();
+            }
+        }
+    }
+
+    /**
+     * The spans of each row passing through a section, clipped to the
+     * section plus BORDER and relative to the section's lower corner. Two
+     * sections with equal signatures have identical outlines.
+     */
+    public static final class Signature {
+        private final byte[] data;
+        private final int hashCode;
+
+        private Signature(byte[] data) {
+            this.data = data;
+            hashCode = Arrays.hashCode(data);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Signature && Arrays.equals(data, ((Signature) obj).data);
+        }
+    }
+
+    /**
+     * Collect the spans of a slab of sections, i.e. all sections sharing the
+     * same lower y and z coordinates, and compute the signature of each.
+     * The instance is reusable: call scan for each slab.
+     */
+    public static class Slab implements SpanVisitor {
+        private static final int ROW_SIZE = SIZE + BORDER*2;
+        private static final int ROWS = ROW_SIZE * ROW_SIZE;
+
+        private int minY;
+        private int minZ;
+        private int lastRow;
+        private int spanCount;
+        private final int[] rowStart = new int[ROWS + 1];
+        private final int[] cursor = new int[ROWS];
+        private int[] spanX0 = new int[ROWS];
+        private int[] spanX1 = new int[ROWS];
+        // At most ROW_SIZE/2 spans can fit in a clipped row.
+        private final byte[] buf = new byte[ROWS * (1 + ROW_SIZE)];
+
+        /**
+         * @param y the lower y coordinate of the slab's sections
+         * @param z the lower z coordinate of the slab's sections
+         */
+        public void scan(RegionBase region, int y, int z) {
+            minY = y - BORDER;
+            minZ = z - BORDER;
+            lastRow = 0;
+            spanCount = 0;
+            region.getSpans(minY, minY + ROW_SIZE - 1, minZ, minZ + ROW_SIZE - 1, this);
+            for (; lastRow < ROWS; lastRow++) {
+                rowStart[lastRow + 1] = spanCount;
+            }
+            System.arraycopy(rowStart, 0, cursor, 0, ROWS);
+        }
+
+        @Override
+        public void visitSpan(int y, int z, int x0, int x1) {
+            if (y < minY || y >= minY + ROW_SIZE || z < minZ || z >= minZ + ROW_SIZE) {
+                return;
+            }
+            final int row = (z - minZ)*ROW_SIZE + (y - minY);
+            for (; lastRow < row; lastRow++) {
+                rowStart[lastRow + 1] = spanCount;
+            }
+            if (spanCount == spanX0.length) {
+                spanX0 = Arrays.copyOf(spanX0, spanCount * 2);
+                spanX1 = Arrays.copyOf(spanX1, spanCount * 2);
+            }
+            spanX0[spanCount] = x0;
+            spanX1[spanCount] = x1;
+            spanCount++;
+        }
+
+        /**
+         * Must be called in order of increasing x after each scan.
+         *
+         * @param x the lower x coordinate of the section
+         * @return the signature of the section, or null if the section can't
+         *         contain any boundary blocks: either every row is empty or
+         *         every row is full.
+         */
+        public Signature getSignature(int x) {
+            final int lo = x - BORDER;
+            final int hi = lo + ROW_SIZE - 1;
+            boolean allEmpty = true;
+            boolean allFull = true;
+            int len = 0;
+            for (int row = 0; row < ROWS; row++) {
+                int c = cursor[row];
+                final int end = rowStart[row + 1];
+                while (c < end && spanX1[c] < lo) {
+                    c++;
+                }
+                cursor[row] = c;
+                final int countPos = len++;
+                int count = 0;
+                for (; c < end && spanX0[c] <= hi; c++) {
+                    final int x0 = Math.max(spanX0[c], lo);
+                    final int x1 = Math.min(spanX1[c], hi);
+                    buf[len++] = (byte) (x0 - lo);
+                    buf[len++] = (byte) (x1 - lo);
+                    count++;
+                    if (x0 != lo || x1 != hi) {
+                        allFull = false;
+                    }
+                }
+                buf[countPos] = (byte) count;
+                if (count == 0) {
+                    allFull = false;
+                } else {
+                    allEmpty = false;
+                }
+            }
+            if (allEmpty || allFull) {
+                return null;
+            }
+            return new Signature(Arrays.copyOf(buf, len));
+        }
+    }
+}
@@ -0,0 +1,548 @@
+package com.bencvt.minecraft.buildregion.ui.world;
+
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+
+import libshapedraw.MinecraftAccess;
+import libshapedraw.primitive.ReadonlyColor;
+
+import org.lwjgl.BufferUtils;
+import org.lwjgl.opengl.ARBVertexBufferObject;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GLContext;
+
+/**
+ * A growable list of vertices, stored as packed x/y/z floats rather than
+ * Vector3 objects. The same array is used for both the VBO upload and the
+ * immediate mode fallback.
+ * <p>
+ * Optionally the store can be indexed: duplicate vertices are removed and
+ * replaced by an index array, suitable for glDrawElements.
+ * <p>
+ * If the client supports it, the store can also be pushed to VRAM as a VBO,
+ * allocated from the BufferPool. The VBO methods must only be called from the
+ * render thread.
+ * <p>
+ * Block-aligned vertices are always a small whole number plus or minus one
+ * of the margins (CUBE_MARGIN, MINI_MARGIN), so if every coordinate is a
+ * multiple of 1/QUANTIZE_SCALE within the range of a short, the VBO is
+ * uploaded as shorts in fixed point, half the size of floats. Otherwise,
+ * e.g. for shells or coordinates far from the store's origin, it falls back
+ * to floats.
+ * <p>
+ * Vertices can also carry their own alpha, set with setAlpha before adding
+ * them. Such a store is drawn in one call with a color array: the line color
+ * with each vertex's alpha applied. The color array is only re-uploaded when
+ * the line color or alpha scale changes, e.g. during a fade.
+ *
+ * @author bencvt
+ */
+public class VertexStore {
+    private static final int INITIAL_CAPACITY = 64;
+    /** Packed coordinates use 10 bits per axis. */
+    private static final int PACK_BITS = 10;
+    private static final int PACK_BIAS = 1 << (PACK_BITS - 1);
+    private static final int EMPTY = -1;
+    /** Fixed point scale of quantized vertices: enough for MINI_MARGIN. */
+    public static final int QUANTIZE_SCALE = 128;
+    /** Color arrays kept per store, e.g. for the visible and hidden passes. */
+    private static final int COLOR_SLOTS = 2;
+
+    private float[] data;
+    private int size;
+    /** Null unless indexed. */
+    private int[] indices;
+    /** The VBO handles, kept across clear() so they can be reused. */
+    private int vboId;
+    private int indexVboId;
+    /** False if the VBOs' contents are stale. */
+    private boolean uploaded;
+    /** True if the vertex VBO holds shorts rather than floats. */
+    private boolean uploadedQuantized;
+    /** Per-vertex alpha, 0-255. Null until setAlpha is called. */
+    private byte[] alphas;
+    private byte alpha = (byte) 0xFF;
+    /** Color VBOs, lazily instantiated, and the color each was built for. */
+    private int[] colorVboIds;
+    private int[] colorVboARGB;
+    private boolean[] colorVboValid;
+    private int nextColorSlot;
+    private ByteBuffer colorBuffer;
+
+    public VertexStore() {
+        data = new float[INITIAL_CAPACITY * 3];
+    }
+
+    public VertexStore add(double x, double y, double z) {
+        if (indices != null) {
+            throw new IllegalStateException("already indexed");
+        }
+        if (size * 3 == data.length) {
+            data = Arrays.copyOf(data, data.length * 2);
+        }
+        if (alphas != null) {
+            if (size == alphas.length) {
+                alphas = Arrays.copyOf(alphas, data.length / 3);
+            }
+            alphas[size] = alpha;
+        }
+        final int i = size * 3;
+        data[i] = (float) x;
+        data[i + 1] = (float) y;
+        data[i + 2] = (float) z;
+        size++;
+        uploaded = false;
+        return this;
+    }
+
+    /**
+     * Set the alpha of vertices added from now on, relative to the line
+     * color's. Vertices added before the first call are fully opaque.
+     */
+    public VertexStore setAlpha(double alpha) {
+        if (indices != null) {
+            throw new IllegalStateException("already indexed");
+        }
+        if (alphas == null) {
+            alphas = new byte[data.length / 3];
+            Arrays.fill(alphas, 0, size, (byte) 0xFF);
+        }
+        this.alpha = (byte) toByte(alpha);
+        return this;
+    }
+
+    private static int toByte(double component) {
+        return (int) Math.round(Math.max(0.0, Math.min(1.0, component)) * 255.0);
+    }
+
+    /**
+     * @return the number of vertices in the store; if indexed, the number of
+     *         unique vertices
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the number of vertices to draw; if indexed, the number of
+     *         indices
+     */
+    public int getElementCount() {
+        return indices == null ? size : indices.length;
+    }
+
+    /**
+     * @return the local memory used by the vertices and indices
+     */
+    public long getByteCount() {
+        return data.length * 4L + (indices == null ? 0L : indices.length * 4L) +
+                (alphas == null ? 0L : alphas.length);
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean isIndexed() {
+        return indices != null;
+    }
+
+    /**
+     * Remove all vertices. Any VBO is kept and reused by the next createVBO.
+     */
+    public void clear() {
+        size = 0;
+        indices = null;
+        alphas = null;
+        alpha = (byte) 0xFF;
+        uploaded = false;
+    }
+
+    public float getX(int index) {
+        return data[index * 3];
+    }
+
+    public float getY(int index) {
+        return data[index * 3 + 1];
+    }
+
+    public float getZ(int index) {
+        return data[index * 3 + 2];
+    }
+
+    /**
+     * Release any unused capacity. Call once the store is fully populated.
+     */
+    public void trimToSize() {
+        if (data.length > size * 3) {
+            data = Arrays.copyOf(data, size * 3);
+        }
+        if (alphas != null && alphas.length > size) {
+            alphas = Arrays.copyOf(alphas, size);
+        }
+    }
+
+    /**
+     * @return a new direct buffer of the vertices, suitable for
+     *         glBufferSubData
+     */
+    public ByteBuffer toByteBuffer() {
+        ByteBuffer buf = BufferUtils.createByteBuffer(size * 3 * 4);
+        buf.asFloatBuffer().put(data, 0, size * 3);
+        return buf;
+    }
+
+    /**
+     * @return true if every coordinate can be exactly represented as a short
+     *         in 1/QUANTIZE_SCALE fixed point
+     */
+    public boolean isQuantizable() {
+        for (int i = 0; i < size * 3; i++) {
+            final float q = data[i] * QUANTIZE_SCALE;
+            if (q != (float) Math.rint(q) || q < Short.MIN_VALUE || q > Short.MAX_VALUE) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return a new direct buffer of the vertices in fixed point, suitable
+     *         for glBufferSubData. Only valid if isQuantizable.
+     */
+    public ByteBuffer toQuantizedByteBuffer() {
+        ByteBuffer buf = BufferUtils.createByteBuffer(size * 3 * 2);
+        ShortBuffer shorts = buf.asShortBuffer();
+        for (int i = 0; i < size * 3; i++) {
+            shorts.put((short) Math.rint(data[i] * QUANTIZE_SCALE));
+        }
+        return buf;
+    }
+
+    /**
+     * @return a new direct buffer of indices suitable for glBufferSubData,
+     *         using shorts if possible. Null if not indexed.
+     */
+    public ByteBuffer toIndexByteBuffer() {
+        if (indices == null) {
+            return null;
+        }
+        if (isShortIndexed()) {
+            ByteBuffer buf = BufferUtils.createByteBuffer(indices.length * 2);
+            ShortBuffer shorts = buf.asShortBuffer();
+            for (int index : indices) {
+                shorts.put((short) index);
+            }
+            return buf;
+        }
+        ByteBuffer buf = BufferUtils.createByteBuffer(indices.length * 4);
+        buf.asIntBuffer().put(indices);
+        return buf;
+    }
+
+    /**
+     * @return true if the index buffer uses GL_UNSIGNED_SHORT rather than
+     *         GL_UNSIGNED_INT
+     */
+    public boolean isShortIndexed() {
+        return size <= 0x10000;
+    }
+
+    /**
+     * Send vertices first through first+count-1 to the tessellator; for
+     * clients without VBO support. Not applicable to indexed stores.
+     */
+    public void addVertices(MinecraftAccess mc, int first, int count) {
+        final int end = (first + count) * 3;
+        for (int i = first * 3; i < end; i += 3) {
+            mc.addVertex(data[i], data[i + 1], data[i + 2]);
+        }
+    }
+
+    /**
+     * Send every vertex to the tessellator; for clients without VBO support.
+     */
+    public void addVertices(MinecraftAccess mc) {
+        if (indices == null) {
+            addVertices(mc, 0, size);
+        } else {
+            for (int index : indices) {
+                final int i = index * 3;
+                mc.addVertex(data[i], data[i + 1], data[i + 2]);
+            }
+        }
+    }
+
+    /**
+     * Remove duplicate vertices, replacing them with an index array.
+     * <p>
+     * Vertices are deduplicated by packing each coordinate as a whole number
+     * plus or minus the specified margin, e.g. block edges inset by
+     * CUBE_MARGIN. Coordinates must be small, i.e. relative to a section.
+     * 
+     * @return false if any coordinate couldn't be packed, or the vertices
+     *         have their own alpha, in which case the store is left unindexed
+     */
+    public boolean index(double margin) {
+        if (indices != null) {
+            return true;
+        }
+        if (alphas != null) {
+            return false;
+        }
+        final int[] packed = new int[size];
+        for (int i = 0; i < size; i++) {
+            final int px = pack(data[i*3], margin);
+            final int py = pack(data[i*3 + 1], margin);
+            final int pz = pack(data[i*3 + 2], margin);
+            if (px == EMPTY || py == EMPTY || pz == EMPTY) {
+                return false;
+            }
+            packed[i] = (px << (PACK_BITS * 2)) | (py << PACK_BITS) | pz;
+        }
+
+        // Open addressing hash of packed vertex to unique index.
+        int capacity = 16;
+        while (capacity < size * 2) {
+            capacity <<= 1;
+        }
+        final int mask = capacity - 1;
+        final int[] keys = new int[capacity];
+        final int[] values = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+
+        final int[] newIndices = new int[size];
+        int unique = 0;
+        for (int i = 0; i < size; i++) {
+            final int key = packed[i];
+            int slot = (key * 0x9E3779B1) >>> 7 & mask;
+            while (keys[slot] != EMPTY && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            if (keys[slot] == EMPTY) {
+                keys[slot] = key;
+                values[slot] = unique;
+                // Compact in place: unique <= i, so vertex i has already
+                // been read.
+                System.arraycopy(data, i*3, data, unique*3, 3);
+                unique++;
+            }
+            newIndices[i] = values[slot];
+        }
+        size = unique;
+        indices = newIndices;
+        uploaded = false;
+        trimToSize();
+        return true;
+    }
+
+    /**
+     * @return the coordinate as 2k+1 for k+margin or 2k for k-margin, biased
+     *         to be non-negative; or EMPTY if it's neither.
+     */
+    private static int pack(float coord, double margin) {
+        final int k = Math.round(coord);
+        final int code;
+        if (coord > k && coord == (float) (k + margin)) {
+            code = k*2 + 1;
+        } else if (coord < k && coord == (float) (k - margin)) {
+            code = k*2;
+        } else {
+            return EMPTY;
+        }
+        if (code < -PACK_BIAS || code >= PACK_BIAS) {
+            return EMPTY;
+        }
+        return code + PACK_BIAS;
+    }
+
+    /**
+     * Render every vertex as GL_LINES, using the VBO if available.
+     */
+    public void render(MinecraftAccess mc) {
+        if (indices == null) {
+            render(mc, 0, size);
+            return;
+        }
+        if (!uploaded) {
+            mc.startDrawing(GL11.GL_LINES);
+            addVertices(mc);
+            mc.finishDrawing();
+            return;
+        }
+        ARBVertexBufferObject.glBindBufferARB(ARBVertexBufferObject.GL_ELEMENT_ARRAY_BUFFER_ARB, indexVboId);
+        beginVBO();
+        GL11.glDrawElements(GL11.GL_LINES, indices.length,
+                isShortIndexed() ? GL11.GL_UNSIGNED_SHORT : GL11.GL_UNSIGNED_INT, 0);
+        endVBO();
+        ARBVertexBufferObject.glBindBufferARB(ARBVertexBufferObject.GL_ELEMENT_ARRAY_BUFFER_ARB, 0);
+    }
+
+    /**
+     * Render vertices first through first+count-1 as GL_LINES, using the VBO
+     * if available. Not applicable to indexed stores.
+     */
+    public void render(MinecraftAccess mc, int first, int count) {
+        render(mc, GL11.GL_LINES, first, count);
+    }
+
+    /**
+     * Render vertices first through first+count-1 using the specified
+     * primitive mode, using the VBO if available. Not applicable to indexed
+     * stores.
+     */
+    public void render(MinecraftAccess mc, int mode, int first, int count) {
+        if (count <= 0) {
+            return;
+        }
+        if (!uploaded) {
+            mc.startDrawing(mode);
+            addVertices(mc, first, count);
+            mc.finishDrawing();
+            return;
+        }
+        beginVBO();
+        GL11.glDrawArrays(mode, first, count);
+        endVBO();
+    }
+
+    /**
+     * Render every vertex as GL_LINES in the specified color, with each
+     * vertex's alpha applied on top of alphaScale. Uses the VBO and a color
+     * array if available, so it's a single draw call. Not applicable to
+     * indexed stores.
+     */
+    public void render(MinecraftAccess mc, ReadonlyColor color, double alphaScale) {
+        if (alphas == null) {
+            color.glApply(alphaScale);
+            render(mc, 0, size);
+            return;
+        }
+        if (!uploaded) {
+            // One batch per run of vertices sharing an alpha.
+            int first = 0;
+            for (int i = 1; i <= size; i++) {
+                if (i == size || alphas[i] != alphas[first]) {
+                    color.glApply(alphaScale * (alphas[first] & 0xFF) / 255.0);
+                    render(mc, first, i - first);
+                    first = i;
+                }
+            }
+            return;
+        }
+        ARBVertexBufferObject.glBindBufferARB(ARBVertexBufferObject.GL_ARRAY_BUFFER_ARB,
+                getColorVBO(color, alphaScale));
+        GL11.glEnableClientState(GL11.GL_COLOR_ARRAY);
+        GL11.glColorPointer(4, GL11.GL_UNSIGNED_BYTE, 0, 0L);
+        beginVBO();
+        GL11.glDrawArrays(GL11.GL_LINES, 0, size);
+        endVBO();
+        GL11.glDisableClientState(GL11.GL_COLOR_ARRAY);
+    }
+
+    /**
+     * @return a VBO holding the color of every vertex, uploading it if no
+     *         slot already has this color
+     */
+    private int getColorVBO(ReadonlyColor color, double alphaScale) {
+        final int r = toByte(color.getRed());
+        final int g = toByte(color.getGreen());
+        final int b = toByte(color.getBlue());
+        final int a = toByte(color.getAlpha() * alphaScale);
+        final int argb = (a << 24) | (r << 16) | (g << 8) | b;
+        if (colorVboIds == null) {
+            colorVboIds = new int[COLOR_SLOTS];
+            colorVboARGB = new int[COLOR_SLOTS];
+            colorVboValid = new boolean[COLOR_SLOTS];
+        }
+        for (int slot = 0; slot < COLOR_SLOTS; slot++) {
+            if (colorVboValid[slot] && colorVboARGB[slot] == argb) {
+                return colorVboIds[slot];
+            }
+        }
+        if (colorBuffer == null || colorBuffer.capacity() < size * 4) {
+            colorBuffer = BufferUtils.createByteBuffer(size * 4);
+        }
+        colorBuffer.clear();
+        for (int i = 0; i < size; i++) {
+            colorBuffer.put((byte) r).put((byte) g).put((byte) b);
+            colorBuffer.put((byte) ((a * (alphas[i] & 0xFF) + 127) / 255));
+        }
+        colorBuffer.flip();
+        final int slot = nextColorSlot;
+        nextColorSlot = (slot + 1) % COLOR_SLOTS;
+        colorVboIds[slot] = BufferPool.upload(ARBVertexBufferObject.GL_ARRAY_BUFFER_ARB, colorVboIds[slot], colorBuffer);
+        colorVboARGB[slot] = argb;
+        colorVboValid[slot] = true;
+        return colorVboIds[slot];
+    }
+
+    /**
+     * Bind the vertex VBO and point the vertex array at it. Quantized
+     * vertices are scaled back to blocks by the modelview matrix.
+     */
+    private void beginVBO() {
+        ARBVertexBufferObject.glBindBufferARB(ARBVertexBufferObject.GL_ARRAY_BUFFER_ARB, vboId);
+        GL11.glEnableClientState(GL11.GL_VERTEX_ARRAY);
+        if (uploadedQuantized) {
+            GL11.glPushMatrix();
+            GL11.glScaled(1.0 / QUANTIZE_SCALE, 1.0 / QUANTIZE_SCALE, 1.0 / QUANTIZE_SCALE);
+            GL11.glVertexPointer(3, GL11.GL_SHORT, 0, 0);
+        } else {
+            GL11.glVertexPointer(3, GL11.GL_FLOAT, 0, 0);
+        }
+    }
+
+    private void endVBO() {
+        if (uploadedQuantized) {
+            GL11.glPopMatrix();
+        }
+        GL11.glDisableClientState(GL11.GL_VERTEX_ARRAY);
+        ARBVertexBufferObject.glBindBufferARB(ARBVertexBufferObject.GL_ARRAY_BUFFER_ARB, 0);
+    }
+
+    /**
+     * If the client supports VBOs and the VBO isn't up to date, copy the
+     * contents of this store to VRAM, reusing the existing VBO if possible.
+     */
+    public void createVBO() {
+        if (uploaded || isEmpty() || !GLContext.getCapabilities().GL_ARB_vertex_buffer_object) {
+            return;
+        }
+        uploadedQuantized = isQuantizable();
+        vboId = BufferPool.upload(ARBVertexBufferObject.GL_ARRAY_BUFFER_ARB, vboId,
+                uploadedQuantized ? toQuantizedByteBuffer() : toByteBuffer());
+        if (indices != null) {
+            indexVboId = BufferPool.upload(ARBVertexBufferObject.GL_ELEMENT_ARRAY_BUFFER_ARB, indexVboId, toIndexByteBuffer());
+        } else if (indexVboId != 0) {
+            BufferPool.release(indexVboId);
+            indexVboId = 0;
+        }
+        if (colorVboValid != null) {
+            Arrays.fill(colorVboValid, false);
+        }
+        uploaded = true;
+
+        // We could clear the float array at this point as it's redundant, but
+        // keep it around just in case the VBO gets removed prematurely.
+    }
+
+    /**
+     * Return the VBOs to the pool.
+     */
+    public void removeVBO() {
+        BufferPool.release(vboId);
+        BufferPool.release(indexVboId);
+        vboId = 0;
+        indexVboId = 0;
+        if (colorVboIds != null) {
+            for (int slot = 0; slot < COLOR_SLOTS; slot++) {
+                BufferPool.release(colorVboIds[slot]);
+                colorVboIds[slot] = 0;
+                colorVboValid[slot] = false;
+            }
+        }
+        uploaded = false;
+    }
+}
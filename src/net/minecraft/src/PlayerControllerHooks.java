@@ -2,7 +2,6 @@ package net.minecraft.src;
 
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
-import java.util.LinkedHashSet;
 
 import net.minecraft.client.Minecraft;
 
@@ -10,11 +9,20 @@ import net.minecraft.client.Minecraft;
  * Provide an API for player clicking on entities and blocks.
  * 
  * Implemented by inserting a proxy for Minecraft.playerController.
+ * <p>
+ * Listeners are notified in order of increasing priority, then in order of
+ * registration. A listener registered with finalCancel set ends the dispatch
+ * as soon as it cancels an event, skipping the remaining listeners.
+ * <p>
+ * The listeners are kept in an array that's replaced on every register and
+ * unregister, so dispatching an event (which happens at tick rate while
+ * the player is mining) doesn't allocate or lock.
  * 
  * @author bencvt
  */
 public class PlayerControllerHooks extends PlayerControllerMP {
-    public static final int VERSION = 5;
+    public static final int VERSION = 6;
+    public static final int PRIORITY_DEFAULT = 0;
 
     public interface PlayerControllerEventListener {
         /**
@@ -68,14 +76,66 @@ public class PlayerControllerHooks extends PlayerControllerMP {
         public boolean onEntityClick(boolean isLeftClick, Entity entity, boolean cancelled);
     }
 
-    private static LinkedHashSet<PlayerControllerEventListener> eventListeners = new LinkedHashSet();
+    private static class Registration {
+        public final PlayerControllerEventListener listener;
+        public final int priority;
+        public final boolean finalCancel;
+
+        public Registration(PlayerControllerEventListener listener, int priority, boolean finalCancel) {
+            this.listener = listener;
+            this.priority = priority;
+            this.finalCancel = finalCancel;
+        }
+    }
+
+    /** Never modified; replaced instead. */
+    private static volatile Registration[] registrations = new Registration[0];
 
     public static boolean register(PlayerControllerEventListener listener) {
-        return eventListeners.add(listener);
+        return register(listener, PRIORITY_DEFAULT, false);
     }
 
-    public static boolean unregister(PlayerControllerEventListener listener) {
-        return eventListeners.remove(listener);
+    /**
+     * @param listener
+     * @param priority listeners with lower priorities are notified first
+     * @param finalCancel if true and the listener cancels an event, don't
+     *                    notify the remaining listeners
+     * @return false if the listener was already registered
+     */
+    public static synchronized boolean register(PlayerControllerEventListener listener, int priority, boolean finalCancel) {
+        if (listener == null) {
+            throw new IllegalArgumentException();
+        }
+        final Registration[] prev = registrations;
+        int insertAt = prev.length;
+        for (int i = prev.length - 1; i >= 0; i--) {
+            if (prev[i].listener == listener) {
+                return false;
+            }
+            if (prev[i].priority > priority) {
+                insertAt = i;
+            }
+        }
+        final Registration[] next = new Registration[prev.length + 1];
+        System.arraycopy(prev, 0, next, 0, insertAt);
+        next[insertAt] = new Registration(listener, priority, finalCancel);
+        System.arraycopy(prev, insertAt, next, insertAt + 1, prev.length - insertAt);
+        registrations = next;
+        return true;
+    }
+
+    public static synchronized boolean unregister(PlayerControllerEventListener listener) {
+        final Registration[] prev = registrations;
+        for (int i = 0; i < prev.length; i++) {
+            if (prev[i].listener == listener) {
+                final Registration[] next = new Registration[prev.length - 1];
+                System.arraycopy(prev, 0, next, 0, i);
+                System.arraycopy(prev, i + 1, next, i, prev.length - i - 1);
+                registrations = next;
+                return true;
+            }
+        }
+        return false;
     }
 
     /**
@@ -151,27 +211,39 @@ public class PlayerControllerHooks extends PlayerControllerMP {
 
     /** @return true if the click event should be cancelled */
     protected boolean dispatchBlockClickEvent(boolean isLeftClick, int blockX, int blockY, int blockZ, int direction) {
+        final Registration[] regs = registrations;
         boolean cancelled = false;
-        for (PlayerControllerEventListener listener : eventListeners) {
-            cancelled = listener.onBlockClick(isLeftClick, blockX, blockY, blockZ, direction, cancelled);
+        for (int i = 0; i < regs.length; i++) {
+            cancelled = regs[i].listener.onBlockClick(isLeftClick, blockX, blockY, blockZ, direction, cancelled);
+            if (cancelled && regs[i].finalCancel) {
+                break;
+            }
         }
         return cancelled;
     }
 
     /** @return true if the click event should be cancelled */
     protected boolean dispatchBlockDamageEvent(int blockX, int blockY, int blockZ, int direction) {
+        final Registration[] regs = registrations;
         boolean cancelled = false;
-        for (PlayerControllerEventListener listener : eventListeners) {
-            cancelled = listener.onBlockDamage(blockX, blockY, blockZ, direction, cancelled);
+        for (int i = 0; i < regs.length; i++) {
+            cancelled = regs[i].listener.onBlockDamage(blockX, blockY, blockZ, direction, cancelled);
+            if (cancelled && regs[i].finalCancel) {
+                break;
+            }
         }
         return cancelled;
     }
 
     /** @return true if the click event should be cancelled */
     protected boolean dispatchEntityClickEvent(boolean isLeftClick, Entity entity) {
+        final Registration[] regs = registrations;
         boolean cancelled = false;
-        for (PlayerControllerEventListener listener : eventListeners) {
-            cancelled = listener.onEntityClick(isLeftClick, entity, cancelled);
+        for (int i = 0; i < regs.length; i++) {
+            cancelled = regs[i].listener.onEntityClick(isLeftClick, entity, cancelled);
+            if (cancelled && regs[i].finalCancel) {
+                break;
+            }
         }
         return cancelled;
     }
@@ -0,0 +1,96 @@
+package net.minecraft.src;
+
+import java.lang.management.ManagementFactory;
+
+import net.minecraft.client.Minecraft;
+
+import com.bencvt.minecraft.buildregion.Controller;
+
+/**
+ * Development-only harness, not shipped with the mod: check that deciding
+ * whether to allow a block click doesn't create garbage, as it runs for
+ * every click and every tick the attack button is held.
+ * <p>
+ * To run, copy test/ to src/minecraft/ along with src/ and start the client.
+ * ModLoader picks up this class like any other mod. Once in game with a build
+ * region set, block clicks around the player are dispatched through
+ * PlayerControllerHooks, the same path real clicks take, and the bytes
+ * allocated by the client thread are measured. The result is shown in chat
+ * and printed to the console.
+ * 
+ * @author bencvt
+ */
+public class mod_BuildRegionAllocationCheck extends BaseMod {
+    /** Clicks before measuring, so lazy caches are filled and code is compiled. */
+    public static final int WARMUP_CLICKS = 20000;
+    public static final int MEASURED_CLICKS = 100000;
+    /**
+     * Denied clicks still refresh the HUD message every
+     * DENY_CLICK_NOTIFY_INTERVAL, which allocates. Allow for a few of those.
+     */
+    public static final long MAX_ALLOCATED_BYTES = 16L << 10;
+
+    private boolean done;
+
+    @Override
+    public String getName() {
+        return "BuildRegionAllocationCheck";
+    }
+
+    @Override
+    public String getVersion() {
+        return Controller.MOD_VERSION;
+    }
+
+    @Override
+    public void load() {
+        ModLoader.setInGameHook(this, true, true);
+    }
+
+    @Override
+    public boolean onTickInGame(float partialTickTime, Minecraft minecraft) {
+        if (done) {
+            return false;
+        }
+        final Controller controller = Controller.getInstance();
+        if (controller == null || controller.getCurRegion() == null ||
+                minecraft.thePlayer == null || minecraft.theWorld == null ||
+                !(minecraft.playerController instanceof PlayerControllerHooks)) {
+            return true;
+        }
+        done = true;
+        final PlayerControllerHooks hooks = (PlayerControllerHooks) minecraft.playerController;
+        final int x = (int) Math.floor(minecraft.thePlayer.posX);
+        final int y = (int) Math.floor(minecraft.thePlayer.posY);
+        final int z = (int) Math.floor(minecraft.thePlayer.posZ);
+
+        final com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final long threadId = Thread.currentThread().getId();
+        click(hooks, x, y, z, WARMUP_CLICKS);
+        final long before = threads.getThreadAllocatedBytes(threadId);
+        click(hooks, x, y, z, MEASURED_CLICKS);
+        final long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+        final String result = "BuildRegion allocation check " +
+                (allocated <= MAX_ALLOCATED_BYTES ? "passed" : "FAILED") + ": " +
+                allocated + " bytes allocated over " + MEASURED_CLICKS + " block clicks";
+        System.out.println(result);
+        controller.getMessageManager().chat(result);
+        return false;
+    }
+
+    /**
+     * Dispatch left and right clicks on the blocks within reach of the
+     * player, some inside the region and some not. Only the listeners are
+     * called; the world is left untouched.
+     */
+    private static void click(PlayerControllerHooks hooks, int x, int y, int z, int count) {
+        for (int i = 0; i < count; i++) {
+            final int dx = i % 9 - 4;
+            final int dy = (i / 9) % 9 - 4;
+            final int dz = (i / 81) % 9 - 4;
+            hooks.dispatchBlockClickEvent((i & 1) == 0, x + dx, y + dy, z + dz, i % 6);
+        }
+    }
+}